@@ -0,0 +1,44 @@
+package com.mogrul.videocompressor.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/** Fixture helpers shared by the benchmarks. */
+final class BenchFiles {
+    private BenchFiles() {}
+
+    /** Writes {@code size} bytes of incompressible data, so neither the file system nor a cache can shortcut reads. */
+    static void writeRandom(Path file, long size) throws IOException {
+        byte[] block = new byte[1024 * 1024];
+        new Random(42).nextBytes(block);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (long written = 0; written < size; written += block.length) {
+                out.write(block, 0, (int) Math.min(block.length, size - written));
+            }
+        }
+    }
+
+    /**
+     * Asks the kernel to drop clean page cache so the next read comes from disk.
+     * Only possible as root on Linux; anywhere else the cold-cache case can't be measured honestly.
+     */
+    static void dropPageCache() throws IOException {
+        Path control = Path.of("/proc/sys/vm/drop_caches");
+        if (!Files.isWritable(control)) {
+            throw new IOException("Cold cache runs need root on Linux (" + control + "), leave out -p cacheState=cold");
+        }
+        Files.writeString(control, "1");
+    }
+
+    static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (Path p : walk.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.mogrul.videocompressor.bench;
+
+import com.mogrul.videocompressor.enu.CopyMode;
+import com.mogrul.videocompressor.util.SegmentedCopier;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Single stream copy throughput: the original 4 MiB direct-buffer loop against
+ * SegmentedCopier in buffered and zero-copy (FileChannel.transferTo) mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CopyBenchmark {
+    @Param({"16777216", "268435456", "1073741824"})
+    public long fileSize;
+
+    @Param({"legacy-loop", "buffered", "zero-copy"})
+    public String mode;
+
+    private Path dir;
+    private Path src;
+    private Path dst;
+    private ExecutorService executor;
+    private SegmentedCopier copier;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("vc-copy-bench");
+        src = dir.resolve("src.bin");
+        dst = dir.resolve("dst.bin");
+
+        BenchFiles.writeRandom(src, fileSize);
+
+        executor = Executors.newCachedThreadPool();
+        if (!mode.equals("legacy-loop")) {
+            copier = new SegmentedCopier(1, 64 * 1024 * 1024, CopyMode.fromName(mode), executor);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void clearDestination() throws IOException {
+        Files.deleteIfExists(dst);
+        Files.deleteIfExists(SegmentedCopier.sidecarOf(dst));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        executor.shutdown();
+        Files.deleteIfExists(dst);
+        Files.deleteIfExists(SegmentedCopier.sidecarOf(dst));
+        Files.deleteIfExists(src);
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public long copy() throws IOException {
+        if (copier == null) return legacyLoop(src, dst);
+        copier.copy(src, dst);
+        return Files.size(dst);
+    }
+
+    /** The copy loop FileStager used before the segmented copier. */
+    private static long legacyLoop(Path src, Path dst) throws IOException {
+        long total = 0;
+        try (SeekableByteChannel in = Files.newByteChannel(src, READ);
+             SeekableByteChannel out = Files.newByteChannel(dst, CREATE, WRITE)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(1024 * 1024 * 4);
+            while (true) {
+                buf.clear();
+                int read = in.read(buf);
+                if (read < 0) break;
+
+                buf.flip();
+                while (buf.hasRemaining()) {
+                    total += out.write(buf);
+                }
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,63 @@
+package com.mogrul.videocompressor.bench;
+
+import com.mogrul.videocompressor.util.VideoFileScanner;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Walking a synthetic library of {@code entries} empty files, 100 per directory under 100 top level folders,
+ * with one in four being a video.
+ * <p>
+ * A million files take minutes to create, so each tree is kept in the temp directory (marked complete with a
+ * {@code .complete} file) and reused by later runs; delete {@code vc-scan-bench-*} to reclaim it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ScanBenchmark {
+    private static final int FILES_PER_DIR = 100;
+    private static final String[] EXTENSIONS = {".mkv", ".srt", ".nfo", ".jpg"};
+
+    @Param({"10000", "100000", "1000000"})
+    public int entries;
+
+    @Param({"1", "8"})
+    public int threads;
+
+    private Path root;
+    private VideoFileScanner scanner;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        scanner = new VideoFileScanner(threads);
+        root = Path.of(System.getProperty("java.io.tmpdir"), "vc-scan-bench-" + entries);
+        Path marker = root.resolve(".complete");
+        if (Files.exists(marker)) return;
+
+        BenchFiles.deleteRecursively(root);
+        int dirs = Math.max(1, entries / FILES_PER_DIR);
+        for (int d = 0; d < dirs; d++) {
+            Path dir = root.resolve("show-" + (d % 100)).resolve("season-" + d);
+            Files.createDirectories(dir);
+            for (int f = 0; f < FILES_PER_DIR; f++) {
+                Files.createFile(dir.resolve("episode-" + f + EXTENSIONS[f % EXTENSIONS.length]));
+            }
+        }
+        Files.createFile(marker);
+    }
+
+    @Benchmark
+    public long scan() throws IOException {
+        LongAdder videos = new LongAdder();
+        scanner.scan(root, file -> videos.increment());
+        return videos.sum();
+    }
+}
@@ -0,0 +1,95 @@
+package com.mogrul.videocompressor.bench;
+
+import com.mogrul.videocompressor.enu.TranscodeAction;
+import com.mogrul.videocompressor.inter.StageExecutor;
+import com.mogrul.videocompressor.record.FileStamp;
+import com.mogrul.videocompressor.util.BoundedExecutor;
+import com.mogrul.videocompressor.util.SQLiteStampStore;
+import com.mogrul.videocompressor.util.VirtualStageExecutor;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A rerun over {@code files} files that are all already done: every file goes through a stage executor, waits
+ * {@code latencyMicros} (a stamp read or stat on a network share) and is checked against the store.
+ * <p>
+ * {@code platform} with 2 workers is the old layout, where stamping shared the download pool. Compare it with
+ * {@code virtual} at 256 workers, the default check stage.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SkipRerunBenchmark {
+    @Param({"platform", "virtual"})
+    public String executor;
+
+    @Param({"2", "256"})
+    public int workers;
+
+    @Param({"0", "2000"})
+    public int latencyMicros;
+
+    @Param({"false"})
+    public boolean index;
+
+    @Param({"5000"})
+    public int files;
+
+    private Path dir;
+    private SQLiteStampStore store;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("vc-skip-bench");
+        store = new SQLiteStampStore(dir.resolve("bench.db"), 4, 256, 0);
+        for (int i = 0; i < files; i++) {
+            store.markDone(key(i), stamp(i), key(i) + ".out.mkv", TranscodeAction.FULL);
+        }
+        store.close();
+        store = new SQLiteStampStore(dir.resolve("bench.db"), 4, 256, index ? 1L << 30 : 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        store.close();
+        BenchFiles.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public int rerun() throws Exception {
+        StageExecutor stage = executor.equals("virtual")
+                ? new VirtualStageExecutor("Check", workers, 32)
+                : new BoundedExecutor("Check", workers, 32);
+        AtomicInteger skipped = new AtomicInteger();
+
+        for (int i = 0; i < files; i++) {
+            int n = i;
+            stage.submit(() -> {
+                if (latencyMicros > 0) LockSupport.parkNanos(latencyMicros * 1000L);
+                try {
+                    if (store.isUpToDate(key(n), stamp(n))) skipped.incrementAndGet();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+        stage.shutdownAndAwait();
+        return skipped.get();
+    }
+
+    private static String key(int i) {
+        return "/mnt/videos/show-" + (i / 100) + "/episode-" + i + ".mkv";
+    }
+
+    private static FileStamp stamp(int i) {
+        return new FileStamp(1_000_000L + i, 1_700_000_000_000L + i, null, String.format("%016x", i), "xxh64-sampled");
+    }
+}
@@ -0,0 +1,59 @@
+package com.mogrul.videocompressor.bench;
+
+import com.mogrul.videocompressor.enu.CopyMode;
+import com.mogrul.videocompressor.metrics.MetricsRegistry;
+import com.mogrul.videocompressor.util.FileStager;
+import com.mogrul.videocompressor.util.SegmentedCopier;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/** End to end {@link FileStager#download} throughput with one and several copy streams. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StagerBenchmark {
+    @Param({"268435456"})
+    public long fileSize;
+
+    @Param({"1", "4"})
+    public int streams;
+
+    private Path dir;
+    private Path remote;
+    private Path local;
+    private FileStager stager;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("vc-stager-bench");
+        remote = dir.resolve("remote.mkv");
+        local = dir.resolve("stage").resolve("remote.mkv");
+        BenchFiles.writeRandom(remote, fileSize);
+        stager = new FileStager(streams, 32 * 1024 * 1024, CopyMode.AUTO, 0, 0, new MetricsRegistry());
+    }
+
+    @Setup(Level.Invocation)
+    public void clearDestination() throws IOException {
+        Files.deleteIfExists(local);
+        Files.deleteIfExists(SegmentedCopier.sidecarOf(local));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        stager.close();
+        BenchFiles.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public long download() throws Exception {
+        stager.download(remote, local);
+        return Files.size(local);
+    }
+}
@@ -0,0 +1,68 @@
+package com.mogrul.videocompressor.bench;
+
+import com.mogrul.videocompressor.enu.StampAlgorithm;
+import com.mogrul.videocompressor.record.FileStamp;
+import com.mogrul.videocompressor.util.StampCalculator;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of stamping one file with each algorithm and block size, the work done for every scanned file before
+ * the skip check.
+ * Runs with a warm page cache by default; {@code -p cacheState=cold} drops the cache before each call so the read
+ * hits the disk, which needs root on Linux.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StampBenchmark {
+    @Param({"sha256-head", "sha256-sampled", "xxh64-sampled"})
+    public String algorithm;
+
+    @Param({"4096", "65536", "1048576"})
+    public int blockBytes;
+
+    @Param({"16777216", "268435456"})
+    public long fileSize;
+
+    // "cold" is opt-in: a default that fails for most users would abort a plain `gradlew jmh`
+    @Param({"warm"})
+    public String cacheState;
+
+    private Path dir;
+    private Path file;
+    private StampCalculator stamper;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        // Fail before writing the test file rather than on the first call
+        if (cacheState.equals("cold")) BenchFiles.dropPageCache();
+
+        dir = Files.createTempDirectory("vc-stamp-bench");
+        file = dir.resolve("video.mkv");
+        BenchFiles.writeRandom(file, fileSize);
+        stamper = new StampCalculator(StampAlgorithm.fromName(algorithm), blockBytes);
+    }
+
+    @Setup(Level.Invocation)
+    public void evict() throws IOException {
+        if (cacheState.equals("cold")) BenchFiles.dropPageCache();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchFiles.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public FileStamp stamp() throws Exception {
+        return stamper.stamp(file);
+    }
+}
@@ -0,0 +1,107 @@
+package com.mogrul.videocompressor.bench;
+
+import com.mogrul.videocompressor.enu.TranscodeAction;
+import com.mogrul.videocompressor.record.FileStamp;
+import com.mogrul.videocompressor.util.SQLiteStampStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Skip checks and status writes against a store pre-filled with {@code rows} finished jobs, from several
+ * threads at once the way the download workers hit it. Change the thread count with {@code -t}.
+ * <p>
+ * {@code readers=1, maxBatch=1} approximates the old single-connection store that committed every write on its
+ * own; compare it against the defaults to see what the reader pool and group commits buy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StoreBenchmark {
+    @Param({"10000", "100000"})
+    public int rows;
+
+    @Param({"1", "4"})
+    public int readers;
+
+    @Param({"1", "256"})
+    public int maxBatch;
+
+    @Param({"false", "true"})
+    public boolean index;
+
+    private Path dir;
+    private SQLiteStampStore store;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private final SplittableRandom random = new SplittableRandom();
+
+        int next(int bound) {
+            return random.nextInt(bound);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("vc-store-bench");
+        store = new SQLiteStampStore(dir.resolve("bench.db"), readers, maxBatch, 0);
+        for (int i = 0; i < rows; i++) {
+            store.markDone(key(i), stamp(i), key(i) + ".out.mkv", TranscodeAction.FULL);
+        }
+
+        // Reopen so the index (when enabled) is preloaded the way it is at startup
+        store.close();
+        store = new SQLiteStampStore(dir.resolve("bench.db"), readers, maxBatch, index ? 1L << 30 : 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        store.close();
+        BenchFiles.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean isUpToDate(Cursor cursor) throws Exception {
+        int i = cursor.next(rows);
+        return store.isUpToDate(key(i), stamp(i));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void upsert(Cursor cursor) throws Exception {
+        int i = cursor.next(rows);
+        store.markDone(key(i), stamp(i), key(i) + ".out.mkv", TranscodeAction.FULL);
+    }
+
+    /** Three readers per writer, roughly a rescan where most files are already done. */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public boolean mixedRead(Cursor cursor) throws Exception {
+        return isUpToDate(cursor);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedWrite(Cursor cursor) throws Exception {
+        upsert(cursor);
+    }
+
+    private static String key(int i) {
+        return "/mnt/videos/show-" + (i / 100) + "/episode-" + i + ".mkv";
+    }
+
+    private static FileStamp stamp(int i) {
+        return new FileStamp(1_000_000L + i, 1_700_000_000_000L + i, null, String.format("%016x", i), "xxh64-sampled");
+    }
+}
@@ -0,0 +1,55 @@
+package com.mogrul.videocompressor.bench;
+
+import com.mogrul.videocompressor.metrics.MetricsRegistry;
+import com.mogrul.videocompressor.util.TailBuffer;
+import com.mogrul.videocompressor.util.ToolRunner;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Output handling for external tools: the tail ring on its own, and a whole {@link ToolRunner} run of a
+ * process printing {@code lines} lines (ffmpeg prints one progress block every half second).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ToolOutputBenchmark {
+    @Param({"1000", "100000"})
+    public int lines;
+
+    private String[] output;
+    private ToolRunner runner;
+    private List<String> command;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        output = new String[lines];
+        for (int i = 0; i < lines; i++) {
+            output[i] = "frame=" + i + " fps=120.0 q=28.0 size=" + (i * 64) + "KiB time=00:00:" + (i % 60) + ".00 speed=4.0x";
+        }
+
+        runner = new ToolRunner(new MetricsRegistry());
+        command = System.getProperty("os.name").toLowerCase(Locale.ROOT).contains("win")
+                ? List.of("cmd", "/c", "for /l %i in (1,1," + lines + ") do @echo frame=%i fps=120.0 speed=4.0x")
+                : List.of("sh", "-c", "seq 1 " + lines + " | sed 's/^/frame=/; s/$/ fps=120.0 speed=4.0x/'");
+    }
+
+    @Benchmark
+    public String tailBuffer() {
+        TailBuffer tail = new TailBuffer(200);
+        for (String line : output) tail.add(line);
+        return tail.toString();
+    }
+
+    @Benchmark
+    public void run(Blackhole bh) throws Exception {
+        bh.consume(runner.run(command));
+    }
+}
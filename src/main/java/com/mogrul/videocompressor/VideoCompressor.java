@@ -1,7 +1,12 @@
 package com.mogrul.videocompressor;
 
+import com.mogrul.videocompressor.enu.TranscodeAction;
+import com.mogrul.videocompressor.ffmpeg.BitratePolicy;
 import com.mogrul.videocompressor.ffmpeg.FfmpegTranscoder;
 import com.mogrul.videocompressor.ffmpeg.Ffprobe;
+import com.mogrul.videocompressor.inter.TranscodePolicy;
+import com.mogrul.videocompressor.metrics.MetricsRegistry;
+import com.mogrul.videocompressor.metrics.MetricsServer;
 import com.mogrul.videocompressor.record.Arguments;
 import com.mogrul.videocompressor.record.Config;
 import com.mogrul.videocompressor.record.JobConfig;
@@ -18,17 +23,35 @@ public class VideoCompressor {
         ArgUtil.parse(args);
         Config config = ConfigUtil.getConfig();
 
-        VideoFileScanner fileScanner = new VideoFileScanner();
-        StampCalculator stamper = new StampCalculator(64 * 1024);
-        SQLiteStampStore store = new SQLiteStampStore(config.dbPath());
+        VideoFileScanner fileScanner = new VideoFileScanner(config.scanThreads());
+        StampCalculator stamper = new StampCalculator(config.stampAlgorithm(), 64 * 1024);
+        SQLiteStampStore store = new SQLiteStampStore(config.dbPath(), SQLiteStampStore.DEFAULT_READERS,
+                SQLiteStampStore.DEFAULT_MAX_BATCH, config.indexMemoryLimit());
 
-        ToolRunner runner = new ToolRunner();
+        MetricsRegistry metrics = new MetricsRegistry();
+        ToolRunner runner = new ToolRunner(metrics);
         FfmpegTranscoder transcoder = new FfmpegTranscoder(config.ffmpegPath(), config.fps(), runner,
-                config.outputWidth(), config.outputHeight());
+                config.outputWidth(), config.outputHeight(), metrics);
         Ffprobe ffprobe = new Ffprobe(config.ffprobePath(), runner);
 
-        CompressionService service = new CompressionService(config, fileScanner, stamper, store, transcoder, ffprobe);
-
-        service.run();
+        TranscodePolicy policy = config.smartTranscode()
+                ? new BitratePolicy(config.outputWidth(), config.outputHeight(), config.fps(), config.maxBitsPerPixel(),
+                        config.deleteSourceAfterSuccess())
+                : info -> TranscodeAction.FULL;
+
+        CompressionService service = new CompressionService(config, fileScanner, stamper, store, transcoder, ffprobe,
+                policy, metrics);
+
+        MetricsServer metricsServer = null;
+        if (config.metricsPort() > 0) {
+            metricsServer = new MetricsServer(config.metricsPort(), metrics);
+            metricsServer.start();
+        }
+
+        try {
+            service.run();
+        } finally {
+            if (metricsServer != null) metricsServer.close();
+        }
     }
 }
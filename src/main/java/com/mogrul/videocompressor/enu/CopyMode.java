@@ -0,0 +1,21 @@
+package com.mogrul.videocompressor.enu;
+
+import java.util.Locale;
+
+public enum CopyMode {
+    /** Zero-copy when both ends are on ordinary file systems, buffered otherwise. */
+    AUTO,
+    /** Every byte goes through a direct buffer. */
+    BUFFERED,
+    /** FileChannel.transferTo, letting the kernel copy (copy_file_range/sendfile on Linux). */
+    ZERO_COPY;
+
+    public static CopyMode fromName(String name) {
+        return switch (name.trim().toLowerCase(Locale.ROOT).replace('_', '-')) {
+            case "auto" -> AUTO;
+            case "buffered" -> BUFFERED;
+            case "zero-copy", "zerocopy" -> ZERO_COPY;
+            default -> throw new IllegalArgumentException("Unknown copy mode: " + name);
+        };
+    }
+}
@@ -0,0 +1,26 @@
+package com.mogrul.videocompressor.enu;
+
+/** Why a stage failed, which decides whether and when it is tried again. */
+public enum FailureKind {
+    /** A network share or disk hiccup: reset connections, stale handles, short reads. */
+    TRANSIENT_IO,
+    /** The source itself can't be read by ffprobe/ffmpeg; retrying the same bytes gives the same result. */
+    CORRUPT_INPUT,
+    /** A file is missing or access to it is denied; trying again right away changes nothing. */
+    INACCESSIBLE,
+    /** The stage, temp or output disk filled up. */
+    OUT_OF_DISK,
+    /** The encode finished but its output failed validation. */
+    VALIDATION,
+    /** Anything not recognised above. */
+    UNKNOWN;
+
+    public static FailureKind fromName(String name) {
+        if (name == null) return UNKNOWN;
+        try {
+            return valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return UNKNOWN;
+        }
+    }
+}
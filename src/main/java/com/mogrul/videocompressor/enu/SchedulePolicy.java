@@ -0,0 +1,48 @@
+package com.mogrul.videocompressor.enu;
+
+import java.util.Locale;
+
+/** Order in which waiting files are started. */
+public enum SchedulePolicy {
+    /** In the order the scanner finds them. */
+    FIFO("fifo"),
+    /** Most work first, so no big file is left running alone at the end of a batch. */
+    LARGEST_FIRST("largest-first"),
+    /** Least work first, to clear as many files as possible early. */
+    SMALLEST_FIRST("smallest-first"),
+    /** Oldest modification time first. */
+    OLDEST_FIRST("oldest-first");
+
+    private final String id;
+
+    SchedulePolicy(String id) {
+        this.id = id;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    /**
+     * Sort key for a file, lowest runs first.
+     *
+     * @param work    estimated work, in any unit as long as every file ranked together uses the same one
+     * @param mtimeMs the file's modification time
+     */
+    public long rank(long work, long mtimeMs) {
+        return switch (this) {
+            case FIFO -> 0;
+            case LARGEST_FIRST -> -work;
+            case SMALLEST_FIRST -> work;
+            case OLDEST_FIRST -> mtimeMs;
+        };
+    }
+
+    public static SchedulePolicy fromName(String name) {
+        String n = name.trim().toLowerCase(Locale.ROOT).replace('_', '-');
+        for (SchedulePolicy p : values()) {
+            if (p.id.equals(n)) return p;
+        }
+        throw new IllegalArgumentException("Unknown schedule policy: " + name);
+    }
+}
@@ -0,0 +1,31 @@
+package com.mogrul.videocompressor.enu;
+
+import java.util.Locale;
+
+/** How a file's content fingerprint is computed; the name is what the store records next to each stamp. */
+public enum StampAlgorithm {
+    /** SHA-256 of the first block only, the original stamp. */
+    SHA256_HEAD("sha256-head"),
+    /** SHA-256 over head, evenly spaced middle and tail blocks. */
+    SHA256_SAMPLED("sha256-sampled"),
+    /** xxHash64 over head, evenly spaced middle and tail blocks. */
+    XXH64_SAMPLED("xxh64-sampled");
+
+    private final String id;
+
+    StampAlgorithm(String id) {
+        this.id = id;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public static StampAlgorithm fromName(String name) {
+        String n = name.trim().toLowerCase(Locale.ROOT).replace('_', '-');
+        for (StampAlgorithm a : values()) {
+            if (a.id.equals(n)) return a;
+        }
+        throw new IllegalArgumentException("Unknown stamp algorithm: " + name);
+    }
+}
@@ -0,0 +1,12 @@
+package com.mogrul.videocompressor.enu;
+
+public enum TranscodeAction {
+    /** Already small enough; leave the source as it is. */
+    SKIP,
+    /** Video and audio are fine; copy the streams into the output container. */
+    REMUX,
+    /** Video is fine; copy it and only re-encode the audio. */
+    AUDIO_ONLY,
+    /** Scale, resample and re-encode everything. */
+    FULL
+}
@@ -0,0 +1,70 @@
+package com.mogrul.videocompressor.ffmpeg;
+
+import com.mogrul.videocompressor.enu.TranscodeAction;
+import com.mogrul.videocompressor.enu.VideoCodec;
+import com.mogrul.videocompressor.inter.TranscodePolicy;
+import com.mogrul.videocompressor.record.MediaInfo;
+
+import java.util.Set;
+
+/**
+ * Decides from probe data whether a file needs a full transcode.
+ * Video counts as already efficient when it uses a modern codec, fits the target size and frame rate, is SDR,
+ * and spends no more than {@code maxBitsPerPixel} bits per pixel per frame.
+ */
+public final class BitratePolicy implements TranscodePolicy {
+    private static final Set<String> EFFICIENT_AUDIO = Set.of("aac", "opus");
+    private static final long MAX_AUDIO_BIT_RATE = 192_000L;
+
+    private final int targetWidth;
+    private final int targetHeight;
+    private final int targetFps;
+    private final double maxBitsPerPixel;
+    private final boolean outputRequired;
+
+    /**
+     * @param outputRequired whether every source must end up in the output tree (e.g. it is deleted afterwards),
+     *                       in which case efficient files are remuxed instead of skipped
+     */
+    public BitratePolicy(int targetWidth, int targetHeight, int targetFps, double maxBitsPerPixel, boolean outputRequired) {
+        this.targetWidth = targetWidth;
+        this.targetHeight = targetHeight;
+        this.targetFps = targetFps;
+        this.maxBitsPerPixel = maxBitsPerPixel;
+        this.outputRequired = outputRequired;
+    }
+
+    @Override
+    public TranscodeAction decide(MediaInfo info) {
+        if (!isEfficientVideo(info)) return TranscodeAction.FULL;
+        if (!isEfficientAudio(info)) return TranscodeAction.AUDIO_ONLY;
+        return outputRequired ? TranscodeAction.REMUX : TranscodeAction.SKIP;
+    }
+
+    private boolean isEfficientVideo(MediaInfo info) {
+        if (!info.hasVideo() || info.hdr()) return false;
+        if (info.videoCodec() == VideoCodec.OTHER) return false;
+        if (info.width() > targetWidth || info.height() > targetHeight) return false;
+        if (info.fps() <= 0 || info.fps() > targetFps + 0.5) return false;
+
+        double bpp = videoBitRate(info) / ((double) info.width() * info.height() * info.fps());
+        return bpp > 0 && bpp <= maxBitsPerPixel;
+    }
+
+    private static boolean isEfficientAudio(MediaInfo info) {
+        for (MediaInfo.AudioStream a : info.audioStreams()) {
+            if (a.codecName() == null || !EFFICIENT_AUDIO.contains(a.codecName())) return false;
+            if (a.channels() > 2 || a.bitRate() > MAX_AUDIO_BIT_RATE) return false;
+        }
+        return true;
+    }
+
+    private static long videoBitRate(MediaInfo info) {
+        if (info.videoBitRate() > 0) return info.videoBitRate();
+
+        // Some containers only report the overall rate; take the audio out of it
+        long audio = 0;
+        for (MediaInfo.AudioStream a : info.audioStreams()) audio += a.bitRate();
+        return Math.max(0, info.bitRate() - audio);
+    }
+}
@@ -0,0 +1,75 @@
+package com.mogrul.videocompressor.ffmpeg;
+
+import com.mogrul.videocompressor.metrics.MetricsRegistry;
+import com.mogrul.videocompressor.record.EncodeProgress;
+
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Reads the key=value blocks ffmpeg writes with {@code -progress pipe:1} and publishes each finished
+ * block (ended by a {@code progress=} line) to the metrics registry. Progress lines are consumed so they
+ * don't push real errors out of the output tail.
+ */
+final class FfmpegProgressParser implements Predicate<String> {
+    private static final Set<String> KEYS = Set.of(
+            "frame", "fps", "bitrate", "total_size", "out_time_us", "out_time_ms", "out_time",
+            "dup_frames", "drop_frames", "speed", "progress"
+    );
+
+    private final String id;
+    private final MetricsRegistry metrics;
+
+    private long frame;
+    private double fps;
+    private double speed;
+    private long outTimeMs;
+    private String bitrate;
+    private long totalSize;
+
+    FfmpegProgressParser(String id, MetricsRegistry metrics) {
+        this.id = id;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean test(String line) {
+        int eq = line.indexOf('=');
+        if (eq <= 0) return false;
+
+        String key = line.substring(0, eq);
+        if (!KEYS.contains(key) && !key.startsWith("stream_")) return false;
+        String value = line.substring(eq + 1).trim();
+
+        switch (key) {
+            case "frame" -> frame = parseLong(value);
+            case "fps" -> fps = parseDouble(value);
+            case "bitrate" -> bitrate = value;
+            case "total_size" -> totalSize = parseLong(value);
+            // out_time_ms is also in microseconds, despite the name
+            case "out_time_us" -> outTimeMs = parseLong(value) / 1000;
+            case "speed" -> speed = parseDouble(value.endsWith("x") ? value.substring(0, value.length() - 1) : value);
+            case "progress" -> metrics.encodeProgress(id, new EncodeProgress(
+                    frame, fps, speed, outTimeMs, bitrate, totalSize, System.currentTimeMillis()
+            ));
+            default -> { }
+        }
+        return true;
+    }
+
+    private static long parseLong(String v) {
+        try {
+            return Long.parseLong(v);
+        } catch (NumberFormatException e) {
+            return 0L; // "N/A" before the first frame
+        }
+    }
+
+    private static double parseDouble(String v) {
+        try {
+            return Double.parseDouble(v);
+        } catch (NumberFormatException e) {
+            return 0.0;
+        }
+    }
+}
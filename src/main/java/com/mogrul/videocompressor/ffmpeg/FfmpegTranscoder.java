@@ -1,6 +1,9 @@
 package com.mogrul.videocompressor.ffmpeg;
 
+import com.mogrul.videocompressor.enu.TranscodeAction;
 import com.mogrul.videocompressor.enu.VideoCodec;
+import com.mogrul.videocompressor.metrics.MetricsRegistry;
+import com.mogrul.videocompressor.record.MediaInfo;
 import com.mogrul.videocompressor.util.ToolRunner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -8,42 +11,131 @@ import org.slf4j.LoggerFactory;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 public class FfmpegTranscoder {
     private final Logger logger = LoggerFactory.getLogger(FfmpegTranscoder.class);
     private final Path ffmpegPath;
     private final ToolRunner runner;
+    private final MetricsRegistry metrics;
 
     private final int fps;
     private final int outputWidth;
     private final int outputHeight;
 
-    public FfmpegTranscoder(Path ffmpegPath, int fps, ToolRunner runner, int outputWidth, int outputHeight) {
+    public FfmpegTranscoder(Path ffmpegPath, int fps, ToolRunner runner, int outputWidth, int outputHeight,
+                            MetricsRegistry metrics) {
         this.ffmpegPath = ffmpegPath;
         this.fps = fps;
         this.runner = runner;
+        this.metrics = metrics;
         this.outputWidth = outputWidth;
         this.outputHeight = outputHeight;
     }
 
-    public void transcode(Path input, Path outputTmp, Ffprobe ffprobe) throws Exception {
-        ToolRunner.ToolResult run;
-        VideoCodec codec = ffprobe.getVideoCodec(input);
-        boolean canGpuDecode = (codec == VideoCodec.H264 || codec == VideoCodec.HEVC);
+    public void transcode(Path input, Path outputTmp, MediaInfo info, TranscodeAction action) throws Exception {
+        List<String> cmd;
+        boolean canGpuDecode = canGpuDecode(info);
 
-        if (canGpuDecode) {
+        if (action == TranscodeAction.REMUX) {
+            logger.info("[REMUXING] {}", input);
+            cmd = buildRemuxCmd(input, outputTmp);
+        } else if (action == TranscodeAction.AUDIO_ONLY) {
+            logger.info("[AUDIO TRANSCODING] {}", input);
+            cmd = buildAudioOnlyCmd(input, outputTmp);
+        } else if (canGpuDecode) {
             logger.info("[GPU TRANSCODING] {}", input);
-            run = runner.run(buildGpuCmd(input, outputTmp));
+            cmd = buildGpuCmd(input, outputTmp);
         } else {
             logger.info("[CPU TRANSCODING] {}", input);
-            run = runner.run(buildCpuCmd(input, outputTmp));
+            cmd = buildCpuCmd(input, outputTmp);
+        }
+
+        runFfmpeg(cmd, input.toString(), info.durationSec());
+    }
+
+    static boolean canGpuDecode(MediaInfo info) {
+        VideoCodec codec = info.videoCodec();
+        return codec == VideoCodec.H264 || codec == VideoCodec.HEVC;
+    }
+
+    /**
+     * Runs one ffmpeg command, streaming its progress to the metrics registry under {@code id},
+     * and fails with its output tail on a non-zero exit.
+     */
+    void runFfmpeg(List<String> cmd, String id, double durationSec) throws Exception {
+        List<String> withProgress = new ArrayList<>(cmd);
+        withProgress.addAll(1, List.of("-progress", "pipe:1", "-nostats"));
+
+        ToolRunner.ToolResult run;
+        metrics.encodeStarted(id, durationSec);
+        try {
+            run = runner.run(withProgress, new FfmpegProgressParser(id, metrics));
+        } finally {
+            metrics.encodeFinished(id);
         }
 
         if (run.exitCode() != 0) {
-            throw new RuntimeException("ffmpeg failed (exit " + run.exitCode() + ")\n" + run.outputTail());
+            throw new FfmpegException(run.exitCode(), run.outputTail());
         }
     }
 
+    /** Video only encode of [start, start + duration) of the input; a duration <= 0 runs to the end. */
+    List<String> buildVideoSegmentCmd(Path input, Path output, double start, double duration, boolean gpu) {
+        List<String> cmd = new ArrayList<>(List.of(ffmpegPath.toString(), "-y"));
+        if (gpu) cmd.addAll(List.of("-hwaccel", "cuda", "-hwaccel_output_format", "cuda"));
+
+        // Input seeking decodes from the previous keyframe, so the re-encoded cut is frame accurate
+        cmd.addAll(List.of("-ss", seconds(start), "-i", input.toString()));
+        if (duration > 0) cmd.addAll(List.of("-t", seconds(duration)));
+
+        cmd.addAll(List.of(
+                "-an",
+                "-vf", gpu ? gpuVfNoPad() : cpuVf(),
+                "-c:v", "h264_nvenc",
+                "-preset", "p5",
+                "-rc:v", "vbr_hq",
+                "-cq:v", "22",
+                "-b:v", "0",
+                "-pix_fmt", "yuv420p",
+                output.toString()
+        ));
+        return cmd;
+    }
+
+    List<String> buildAudioCmd(Path input, Path output) {
+        return List.of(
+                ffmpegPath.toString(),
+                "-y",
+                "-i", input.toString(),
+                "-vn",
+                "-map", "0:a:0",
+                "-c:a", "aac",
+                "-b:a", "96k",
+                "-ac", "2",
+                "-ar", "48000",
+                output.toString()
+        );
+    }
+
+    List<String> buildConcatCmd(Path segmentList, Path audio, Path output) {
+        List<String> cmd = new ArrayList<>(List.of(
+                ffmpegPath.toString(),
+                "-y",
+                "-f", "concat",
+                "-safe", "0",
+                "-i", segmentList.toString()
+        ));
+        if (audio != null) cmd.addAll(List.of("-i", audio.toString(), "-map", "0:v", "-map", "1:a"));
+
+        cmd.addAll(List.of("-c", "copy", output.toString()));
+        return cmd;
+    }
+
+    private static String seconds(double s) {
+        return String.format(Locale.ROOT, "%.3f", s);
+    }
+
     private String cpuVf() {
         return "scale=w=" + outputWidth + ":h=" + outputHeight + ":force_original_aspect_ratio=decrease," +
                 "pad=" + outputWidth + ":" + outputHeight + ":(ow-iw)/2:(oh-ih)/2," +
@@ -80,6 +172,34 @@ public class FfmpegTranscoder {
         );
     }
 
+    private List<String> buildRemuxCmd(Path input, Path output) {
+        return List.of(
+                ffmpegPath.toString(),
+                "-y",
+                "-i", input.toString(),
+                "-map", "0:v:0",
+                "-map", "0:a?",
+                "-c", "copy",
+                output.toString()
+        );
+    }
+
+    private List<String> buildAudioOnlyCmd(Path input, Path output) {
+        return List.of(
+                ffmpegPath.toString(),
+                "-y",
+                "-i", input.toString(),
+                "-map", "0:v:0",
+                "-map", "0:a?",
+                "-c:v", "copy",
+                "-c:a", "aac",
+                "-b:a", "96k",
+                "-ac", "2",
+                "-ar", "48000",
+                output.toString()
+        );
+    }
+
     private List<String> buildCpuCmd(Path input, Path output) {
         return List.of(
                 ffmpegPath.toString(),
@@ -99,4 +219,18 @@ public class FfmpegTranscoder {
                 output.toString()
         );
     }
+
+    /** A non-zero ffmpeg exit, with the tail of its output so the cause can be told apart. */
+    public static final class FfmpegException extends RuntimeException {
+        private final String outputTail;
+
+        public FfmpegException(int exitCode, String outputTail) {
+            super("ffmpeg failed (exit " + exitCode + ")\n" + outputTail);
+            this.outputTail = outputTail;
+        }
+
+        public String outputTail() {
+            return outputTail;
+        }
+    }
 }
@@ -1,16 +1,23 @@
 package com.mogrul.videocompressor.ffmpeg;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mogrul.videocompressor.enu.VideoCodec;
+import com.mogrul.videocompressor.record.MediaInfo;
 import com.mogrul.videocompressor.util.ToolRunner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 public class Ffprobe {
     private final Logger logger = LoggerFactory.getLogger(Ffprobe.class);
+    private static final ObjectMapper mapper = new ObjectMapper();
+
     private final Path ffprobePath;
     private final ToolRunner runner;
 
@@ -19,81 +26,161 @@ public class Ffprobe {
         this.runner = runner;
     }
 
-    public void validate(Path outputFile) throws Exception{
-        if (!Files.exists(outputFile)) {
-            throw new ValidationException("Output file does not exist: " + outputFile);
-        }
-        if (Files.size(outputFile) < 1024) {
-            throw new ValidationException("Output file is suspiciously small (<1KB): " + outputFile);
-        }
-
-        logger.info("[VALIDATING] {}", outputFile);
-
-        // 1) Ensure ffprobe can read duration
-        var durationRes = runner.run(List.of(
+    /** Reads format and stream details with a single ffprobe call. */
+    public MediaInfo probe(Path videoFile) throws Exception {
+        ToolRunner.ToolResult result = runner.runForOutput(List.of(
                 ffprobePath.toString(),
                 "-v", "error",
-                "-show_entries", "format=duration",
-                "-of", "default=nw=1:nk=1",
-                outputFile.toString()
+                "-show_format",
+                "-show_streams",
+                "-of", "json",
+                videoFile.toString()
         ));
 
-        if (durationRes.exitCode() != 0) {
-            throw new ValidationException("ffprobe failed reading duration\n" + durationRes.outputTail());
+        if (result.exitCode() != 0) {
+            throw new ProbeException("ffprobe failed (exit " + result.exitCode() + ") for " + videoFile + "\n"
+                    + result.errorTail().strip());
         }
 
-        double duration = parseFirstDouble(durationRes.outputTail());
-        if (!(duration > 0.1)) {
-            throw new ValidationException("Invalid duration from ffprobe: " + durationRes.outputTail().trim());
-        }
+        MediaInfo info = parse(mapper.readTree(result.outputTail()));
+        logger.info("[PROBE] {} {}x{} @ {} fps for {}", info.videoCodec().name(), info.width(), info.height(),
+                Math.round(info.fps() * 100) / 100.0, videoFile);
+        return info;
+    }
 
-        // 2) Ensure at least one video stream exists
-        var videoStreamRes = runner.run(List.of(
+    /** Time of the first video keyframe at or after {@code seconds}, or {@code seconds} itself if none is found nearby. */
+    public double keyframeAfter(Path videoFile, double seconds) throws Exception {
+        // Only decodes keyframes inside a short window, so this stays cheap on long recordings
+        ToolRunner.ToolResult result = runner.runForOutput(List.of(
                 ffprobePath.toString(),
                 "-v", "error",
                 "-select_streams", "v:0",
-                "-show_entries", "stream=codec_name,width,height,r_frame_rate",
-                "-of", "default=nw=1",
-                outputFile.toString()
+                "-skip_frame", "nokey",
+                "-read_intervals", String.format(Locale.ROOT, "%.3f%%+30", seconds),
+                "-show_entries", "frame=best_effort_timestamp_time",
+                "-of", "csv=p=0",
+                videoFile.toString()
         ));
 
-        if (videoStreamRes.exitCode() != 0) {
-            throw new ValidationException("ffprobe failed reading video stream\n" + videoStreamRes.outputTail());
+        if (result.exitCode() == 0) {
+            for (String line : result.outputTail().split("\\R")) {
+                try {
+                    double t = Double.parseDouble(line.trim().replace(",", ""));
+                    if (t >= seconds) return t;
+                } catch (NumberFormatException ignored) {
+                    // blank or N/A timestamps
+                }
+            }
         }
-        if (videoStreamRes.outputTail().trim().isEmpty()) {
+        return seconds;
+    }
+
+    /** Checks a transcoded output is readable and, when known, about as long as its source. */
+    public void validate(Path outputFile, double expectedDurationSec) throws Exception {
+        if (!Files.exists(outputFile)) {
+            throw new ValidationException("Output file does not exist: " + outputFile);
+        }
+        if (Files.size(outputFile) < 1024) {
+            throw new ValidationException("Output file is suspiciously small (<1KB): " + outputFile);
+        }
+
+        logger.info("[VALIDATING] {}", outputFile);
+
+        MediaInfo info;
+        try {
+            info = probe(outputFile);
+        } catch (ProbeException e) {
+            throw new ValidationException(e.getMessage());
+        }
+
+        if (!(info.durationSec() > 0.1)) {
+            throw new ValidationException("Invalid duration from ffprobe: " + info.durationSec());
+        }
+        if (!info.hasVideo()) {
             throw new ValidationException("No video stream detected by ffprobe.");
         }
+
+        // Allow for container/timestamp rounding, but catch truncated encodes
+        if (expectedDurationSec > 0) {
+            double tolerance = Math.max(5.0, expectedDurationSec * 0.05);
+            if (Math.abs(info.durationSec() - expectedDurationSec) > tolerance) {
+                throw new ValidationException("Output duration " + info.durationSec() + "s does not match source "
+                        + expectedDurationSec + "s");
+            }
+        }
     }
 
-    public VideoCodec getVideoCodec(Path videoFile) throws Exception {
-        List<String> cmd = List.of(
-                ffprobePath.toString(),
-                "-v", "error",
-                "-select_streams", "v:0",
-                "-show_entries", "stream=codec_name",
-                "-of", "default=nw=1:nk=1",
-                videoFile.toString()
+    static MediaInfo parse(JsonNode root) {
+        JsonNode format = root.path("format");
+
+        JsonNode video = null;
+        List<MediaInfo.AudioStream> audio = new ArrayList<>();
+        for (JsonNode stream : root.path("streams")) {
+            String type = stream.path("codec_type").asText();
+            boolean attachedPic = stream.path("disposition").path("attached_pic").asInt() == 1;
+
+            if (type.equals("video") && video == null && !attachedPic) {
+                video = stream;
+            } else if (type.equals("audio")) {
+                audio.add(new MediaInfo.AudioStream(
+                        stream.path("index").asInt(),
+                        stream.path("codec_name").asText(null),
+                        stream.path("channels").asInt(),
+                        stream.path("sample_rate").asInt(),
+                        streamBitRate(stream)
+                ));
+            }
+        }
+
+        String codecName = video == null ? null : video.path("codec_name").asText(null);
+        String transfer = video == null ? "" : video.path("color_transfer").asText("");
+        String primaries = video == null ? "" : video.path("color_primaries").asText("");
+
+        return new MediaInfo(
+                format.path("format_name").asText(null),
+                format.path("duration").asDouble(),
+                format.path("bit_rate").asLong(),
+                format.path("size").asLong(),
+                VideoCodec.fromCodecName(codecName),
+                codecName,
+                video == null ? 0 : video.path("width").asInt(),
+                video == null ? 0 : video.path("height").asInt(),
+                video == null ? 0 : frameRate(video),
+                video == null ? 0 : streamBitRate(video),
+                video == null ? null : video.path("pix_fmt").asText(null),
+                transfer.equals("smpte2084") || transfer.equals("arib-std-b67") || primaries.equals("bt2020"),
+                List.copyOf(audio)
         );
+    }
 
-        ToolRunner.ToolResult result = runner.run(cmd);
-        if (result.exitCode() != 0) {
-            return VideoCodec.OTHER;
-        }
-        String codecName = result.outputTail().trim();
+    private static long streamBitRate(JsonNode stream) {
+        // Matroska muxers store per-stream bit rates as a BPS tag instead of bit_rate
+        long bitRate = stream.path("bit_rate").asLong();
+        return bitRate > 0 ? bitRate : stream.path("tags").path("BPS").asLong();
+    }
 
-        VideoCodec videoCodec = VideoCodec.fromCodecName(codecName);
-        logger.info("[CODEC] Found codec {} for {}", videoCodec.name(), videoFile);
+    private static double frameRate(JsonNode video) {
+        // avg_frame_rate reflects variable frame rate recordings better than r_frame_rate
+        double avg = parseRational(video.path("avg_frame_rate").asText(""));
+        return avg > 0 ? avg : parseRational(video.path("r_frame_rate").asText(""));
+    }
 
-        return videoCodec;
+    private static double parseRational(String text) {
+        int slash = text.indexOf('/');
+        try {
+            if (slash < 0) return text.isEmpty() ? 0 : Double.parseDouble(text);
+            double den = Double.parseDouble(text.substring(slash + 1));
+            return den == 0 ? 0 : Double.parseDouble(text.substring(0, slash)) / den;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
     }
 
-    private static double parseFirstDouble(String text) {
-        String s = text.trim();
-        String firstLine = s.contains("\n") ? s.substring(0, s.indexOf('\n')).trim() : s;
-        return Double.parseDouble(firstLine);
+    public static final class ProbeException extends Exception {
+        public ProbeException(String message) { super(message); }
     }
 
-    private static final class ValidationException extends Exception {
+    public static final class ValidationException extends Exception {
         public ValidationException(String message) { super(message); }
     }
 }
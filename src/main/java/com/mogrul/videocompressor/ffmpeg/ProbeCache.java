@@ -0,0 +1,51 @@
+package com.mogrul.videocompressor.ffmpeg;
+
+import com.mogrul.videocompressor.inter.StampStore;
+import com.mogrul.videocompressor.record.FileStamp;
+import com.mogrul.videocompressor.record.MediaInfo;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers probe results per source file, valid for as long as the file keeps the same stamp.
+ * Recent results are held in memory; everything is also persisted in the store so restarts don't re-probe.
+ */
+public final class ProbeCache {
+    private static final int MAX_ENTRIES = 4096;
+
+    private final Ffprobe ffprobe;
+    private final StampStore store;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    public ProbeCache(Ffprobe ffprobe, StampStore store) {
+        this.ffprobe = ffprobe;
+        this.store = store;
+    }
+
+    public MediaInfo get(Path file, String sourceKey, FileStamp stamp) throws Exception {
+        synchronized (entries) {
+            Entry e = entries.get(sourceKey);
+            if (e != null && e.stamp.equals(stamp)) return e.info;
+        }
+
+        MediaInfo info = store.findMediaInfo(sourceKey, stamp).orElse(null);
+        if (info == null) {
+            info = ffprobe.probe(file);
+            store.saveMediaInfo(sourceKey, stamp, info);
+        }
+
+        synchronized (entries) {
+            entries.put(sourceKey, new Entry(stamp, info));
+        }
+        return info;
+    }
+
+    private record Entry(FileStamp stamp, MediaInfo info) {}
+}
@@ -0,0 +1,136 @@
+package com.mogrul.videocompressor.ffmpeg;
+
+import com.mogrul.videocompressor.record.MediaInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * Full transcode of one long file split across several encoders.
+ * <p>
+ * The video is cut at keyframes into segments that are encoded independently (video only), the audio is
+ * encoded once in a single pass so segment edges can't leave gaps in it, and the pieces are joined with the
+ * concat demuxer without another encode.
+ */
+public final class SegmentedTranscoder {
+    private final Logger logger = LoggerFactory.getLogger(SegmentedTranscoder.class);
+    private final FfmpegTranscoder transcoder;
+    private final Ffprobe ffprobe;
+
+    public SegmentedTranscoder(FfmpegTranscoder transcoder, Ffprobe ffprobe) {
+        this.transcoder = transcoder;
+        this.ffprobe = ffprobe;
+    }
+
+    /**
+     * @param segments    how many pieces to cut the video into
+     * @param helperCount how many extra workers to ask {@code helpers} for
+     * @param helpers     executor lending idle encode workers; the calling thread always works too, so
+     *                    helpers that never get scheduled only make the encode slower, not stuck
+     */
+    public void transcode(Path input, Path outputTmp, MediaInfo info, int segments, int helperCount,
+                          Executor helpers) throws Exception {
+        Path workDir = outputTmp.resolveSibling(outputTmp.getFileName() + ".segments");
+        Files.createDirectories(workDir);
+
+        try {
+            double[] cuts = cutPoints(input, info.durationSec(), segments);
+            boolean gpu = FfmpegTranscoder.canGpuDecode(info);
+            Path audio = info.audioStreams().isEmpty() ? null : workDir.resolve("audio.mka");
+
+            // Unit 0 is the audio pass (when there is audio), the rest are video segments
+            List<Unit> units = new ArrayList<>();
+            List<Path> segmentFiles = new ArrayList<>();
+            int count = cuts.length - 1;
+            if (audio != null) {
+                units.add(new Unit(transcoder.buildAudioCmd(input, audio), input + " [audio]", info.durationSec()));
+            }
+            for (int i = 0; i < count; i++) {
+                Path seg = workDir.resolve(String.format("seg_%03d.mkv", i));
+                segmentFiles.add(seg);
+                boolean last = i == count - 1;
+                double duration = cuts[i + 1] - cuts[i];
+                units.add(new Unit(
+                        transcoder.buildVideoSegmentCmd(input, seg, cuts[i], last ? 0 : duration, gpu),
+                        input + " [segment " + (i + 1) + "/" + count + "]",
+                        duration
+                ));
+            }
+
+            logger.info("[SEGMENTED TRANSCODING] {} as {} segments on up to {} encoders",
+                    input, segmentFiles.size(), helperCount + 1);
+            runUnits(units, helperCount, helpers);
+
+            Path list = workDir.resolve("segments.txt");
+            List<String> lines = new ArrayList<>();
+            for (Path seg : segmentFiles) {
+                lines.add("file '" + seg.toAbsolutePath().toString().replace("'", "'\\''") + "'");
+            }
+            Files.write(list, lines);
+
+            transcoder.runFfmpeg(transcoder.buildConcatCmd(list, audio, outputTmp), input + " [concat]",
+                    info.durationSec());
+        } finally {
+            deleteRecursively(workDir);
+        }
+    }
+
+    private double[] cutPoints(Path input, double durationSec, int segments) throws Exception {
+        List<Double> cuts = new ArrayList<>();
+        cuts.add(0.0);
+        for (int i = 1; i < segments; i++) {
+            double t = ffprobe.keyframeAfter(input, durationSec * i / segments);
+            // Sparse keyframes can snap two cuts together; drop the empty segment
+            if (t > cuts.get(cuts.size() - 1) + 1.0 && t < durationSec - 1.0) cuts.add(t);
+        }
+        cuts.add(durationSec);
+        return cuts.stream().mapToDouble(Double::doubleValue).toArray();
+    }
+
+    private void runUnits(List<Unit> units, int helperCount, Executor helpers) throws Exception {
+        AtomicInteger next = new AtomicInteger();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        CountDownLatch remaining = new CountDownLatch(units.size());
+
+        Runnable worker = () -> {
+            int n;
+            while ((n = next.getAndIncrement()) < units.size()) {
+                try {
+                    Unit unit = units.get(n);
+                    if (failure.get() == null) transcoder.runFfmpeg(unit.cmd, unit.id, unit.durationSec);
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    remaining.countDown();
+                }
+            }
+        };
+
+        for (int i = 0; i < helperCount; i++) helpers.execute(worker);
+        worker.run();
+        remaining.await();
+
+        if (failure.get() != null) throw failure.get();
+    }
+
+    private record Unit(List<String> cmd, String id, double durationSec) {}
+
+    private void deleteRecursively(Path dir) {
+        if (!Files.exists(dir)) return;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (Path p : walk.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        } catch (Exception e) {
+            logger.error("[CLEANUP] {}\n{}", dir, e.getMessage());
+        }
+    }
+}
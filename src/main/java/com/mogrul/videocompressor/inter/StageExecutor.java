@@ -0,0 +1,33 @@
+package com.mogrul.videocompressor.inter;
+
+/**
+ * Runs the tasks of one pipeline stage with at most {@link #workers()} at a time and a bounded number waiting.
+ * {@link #submit} blocks the caller while the stage is full, which is how a slow stage holds back the one feeding it.
+ */
+public interface StageExecutor {
+    /** Queues a task, waiting for room when the stage is saturated. */
+    default void submit(Runnable task) throws InterruptedException {
+        submit(task, 0);
+    }
+
+    /** Queues a task with a rank; lower ranks start first when the stage orders its queue. */
+    void submit(Runnable task, long rank) throws InterruptedException;
+
+    /** Starts a task only if a worker is free right now; it goes ahead of anything already queued. */
+    boolean trySubmit(Runnable task);
+
+    /** Workers with nothing to do at the moment. */
+    int idle();
+
+    int workers();
+
+    int queued();
+
+    int active();
+
+    /** Changes how many tasks may run at once. */
+    void resize(int workers);
+
+    /** Stops accepting work and waits for every queued task to finish. */
+    void shutdownAndAwait() throws InterruptedException;
+}
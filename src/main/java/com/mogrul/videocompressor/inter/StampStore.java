@@ -1,12 +1,33 @@
 package com.mogrul.videocompressor.inter;
 
+import com.mogrul.videocompressor.enu.TranscodeAction;
+import com.mogrul.videocompressor.record.FailureRecord;
 import com.mogrul.videocompressor.record.FileStamp;
+import com.mogrul.videocompressor.record.MediaInfo;
+import com.mogrul.videocompressor.record.ScanDir;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
 
 public interface StampStore extends AutoCloseable {
     boolean isUpToDate(String sourcePath, FileStamp stamp) throws Exception;
     void markRunning(String sourcePath, FileStamp stamp) throws Exception;
-    void markDone(String sourcePath, FileStamp stamp, String outputPath) throws Exception;
-    void markFailed(String sourcePath, FileStamp stamp, String error) throws Exception;
+    void markDone(String sourcePath, FileStamp stamp, String outputPath, TranscodeAction decision) throws Exception;
+    void markSkipped(String sourcePath, FileStamp stamp, TranscodeAction decision) throws Exception;
+    void markFailed(String sourcePath, String error, FailureRecord failure) throws Exception;
+    /** The recorded failure of a file whose last run failed, whatever stamp it failed with. */
+    Optional<FailureRecord> findFailure(String sourcePath) throws Exception;
+    /** Jobs still marked RUNNING, i.e. cut short by a crash when read at startup, with the stamp they started from. */
+    Map<String, FileStamp> loadRunning() throws Exception;
+
+    Optional<MediaInfo> findMediaInfo(String sourcePath, FileStamp stamp) throws Exception;
+    void saveMediaInfo(String sourcePath, FileStamp stamp, MediaInfo info) throws Exception;
+
+    /** Directories from the last completed scan, by path. */
+    Map<String, ScanDir> loadScanDirs() throws Exception;
+    /** Replaces the stored directories with the ones seen by this scan. */
+    void saveScanDirs(Collection<ScanDir> dirs) throws Exception;
 
     @Override void close() throws Exception;
 }
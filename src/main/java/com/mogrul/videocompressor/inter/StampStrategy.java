@@ -0,0 +1,14 @@
+package com.mogrul.videocompressor.inter;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/** Computes the content part of a {@link com.mogrul.videocompressor.record.FileStamp}. */
+public interface StampStrategy {
+    /** Recorded in the store so stamps from different strategies are never compared byte for byte. */
+    String algorithm();
+
+    /** Hex fingerprint of {@code file}, read through {@code channel}; {@code size} is the size already stat'ed. */
+    String fingerprint(Path file, FileChannel channel, long size) throws IOException;
+}
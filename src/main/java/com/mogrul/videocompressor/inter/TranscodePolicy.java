@@ -0,0 +1,8 @@
+package com.mogrul.videocompressor.inter;
+
+import com.mogrul.videocompressor.enu.TranscodeAction;
+import com.mogrul.videocompressor.record.MediaInfo;
+
+public interface TranscodePolicy {
+    TranscodeAction decide(MediaInfo info);
+}
@@ -0,0 +1,45 @@
+package com.mogrul.videocompressor.metrics;
+
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Cumulative bucket histogram in seconds, sized for stages that take milliseconds up to hours. */
+final class Histogram {
+    static final double[] BUCKETS = {
+            0.01, 0.05, 0.1, 0.5, 1, 5, 10, 30, 60, 300, 900, 1800, 3600, 7200, 14400
+    };
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS.length];
+    private final LongAdder count = new LongAdder();
+    private final DoubleAdder sum = new DoubleAdder();
+
+    Histogram() {
+        for (int i = 0; i < counts.length; i++) counts[i] = new LongAdder();
+    }
+
+    void observe(double value) {
+        for (int i = 0; i < BUCKETS.length; i++) {
+            if (value <= BUCKETS[i]) {
+                counts[i].increment();
+                break;
+            }
+        }
+        count.increment();
+        sum.add(value);
+    }
+
+    /** Cumulative count of observations at or below bucket {@code i}. */
+    long cumulative(int i) {
+        long total = 0;
+        for (int b = 0; b <= i; b++) total += counts[b].sum();
+        return total;
+    }
+
+    long count() {
+        return count.sum();
+    }
+
+    double sum() {
+        return sum.sum();
+    }
+}
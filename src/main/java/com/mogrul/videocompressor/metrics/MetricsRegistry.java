@@ -0,0 +1,202 @@
+package com.mogrul.videocompressor.metrics;
+
+import com.mogrul.videocompressor.record.EncodeProgress;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Live pipeline measurements shared between the stages and whatever reports on them.
+ * Counters, histograms and gauges are rendered in the Prometheus text format by {@link #scrape()}.
+ */
+public final class MetricsRegistry {
+    public static final String FILES_SCANNED = "videocompressor_files_scanned_total";
+    public static final String FILES_SKIPPED = "videocompressor_files_skipped_total";
+    public static final String FILES_DONE = "videocompressor_files_done_total";
+    public static final String FILES_FAILED = "videocompressor_files_failed_total";
+    public static final String BYTES_DOWNLOADED = "videocompressor_bytes_downloaded_total";
+    public static final String BYTES_UPLOADED = "videocompressor_bytes_uploaded_total";
+    public static final String BYTES_SAVED = "videocompressor_bytes_saved_total";
+    public static final String STAGE_DURATION = "videocompressor_stage_duration_seconds";
+    public static final String TOOL_RUNS = "videocompressor_tool_runs_total";
+    public static final String TOOL_FAILURES = "videocompressor_tool_failures_total";
+    public static final String TOOL_DURATION = "videocompressor_tool_duration_seconds";
+    public static final String ENCODE_RESIZES = "videocompressor_encode_resizes_total";
+    public static final String STAGE_RETRIES = "videocompressor_stage_retries_total";
+
+    private final Map<String, Family> families = new ConcurrentHashMap<>();
+    private final Map<String, ActiveEncode> encodes = new ConcurrentHashMap<>();
+
+    public MetricsRegistry() {
+        register(FILES_SCANNED, "counter", "Video files found by the scanner.");
+        register(FILES_SKIPPED, "counter", "Files skipped as already up to date or already efficient.");
+        register(FILES_DONE, "counter", "Files compressed and committed.");
+        register(FILES_FAILED, "counter", "Files that failed in any stage.");
+        register(BYTES_DOWNLOADED, "counter", "Bytes copied from the input share to the local stage.");
+        register(BYTES_UPLOADED, "counter", "Bytes copied from the local stage to the output share.");
+        register(BYTES_SAVED, "counter", "Source bytes minus output bytes over committed files.");
+        register(STAGE_DURATION, "histogram", "Time spent per file in each pipeline stage.");
+        register(TOOL_RUNS, "counter", "External tool processes started.");
+        register(TOOL_FAILURES, "counter", "External tool processes that exited non-zero.");
+        register(TOOL_DURATION, "histogram", "Wall time of external tool processes.");
+        register(ENCODE_RESIZES, "counter", "Changes to the number of encode workers, by direction.");
+        register(STAGE_RETRIES, "counter", "Failed stages queued to run again, by failure kind.");
+
+        // Unlabelled counters start at zero so they're scraped before the first event
+        for (String name : List.of(FILES_SCANNED, FILES_SKIPPED, FILES_DONE, FILES_FAILED,
+                BYTES_DOWNLOADED, BYTES_UPLOADED, BYTES_SAVED)) {
+            add(name, 0);
+        }
+
+        gauge("videocompressor_encodes_active", "Encodes currently running.", "", encodes::size);
+        gauge("videocompressor_encode_speed_avg", "Mean ffmpeg speed (x realtime) over running encodes.", "",
+                this::averageEncodeSpeed);
+    }
+
+    // ---------------------------
+    // Counters / histograms / gauges
+    // ---------------------------
+
+    public void increment(String name) {
+        add(name, "", 1);
+    }
+
+    public void add(String name, long delta) {
+        add(name, "", delta);
+    }
+
+    public void add(String name, String labels, long delta) {
+        ((LongAdder) family(name).series.computeIfAbsent(labels, k -> new LongAdder())).add(delta);
+    }
+
+    /** Current value of an unlabelled counter. */
+    public long count(String name) {
+        Object series = family(name).series.get("");
+        return series instanceof LongAdder adder ? adder.sum() : 0;
+    }
+
+    public void observe(String name, String labels, double seconds) {
+        ((Histogram) family(name).series.computeIfAbsent(labels, k -> new Histogram())).observe(seconds);
+    }
+
+    /** Registers a value read at scrape time. */
+    public void gauge(String name, String help, String labels, Supplier<Number> value) {
+        families.computeIfAbsent(name, n -> new Family("gauge", help)).series.put(labels, value);
+    }
+
+    /** Formats a single {@code key="value"} label. */
+    public static String label(String key, String value) {
+        return key + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+    }
+
+    private void register(String name, String type, String help) {
+        families.put(name, new Family(type, help));
+    }
+
+    private Family family(String name) {
+        Family f = families.get(name);
+        if (f == null) throw new IllegalArgumentException("Unknown metric: " + name);
+        return f;
+    }
+
+    // ---------------------------
+    // Running encodes
+    // ---------------------------
+
+    public void encodeStarted(String id, double durationSec) {
+        encodes.put(id, new ActiveEncode(id, durationSec, System.currentTimeMillis(), null));
+    }
+
+    public void encodeProgress(String id, EncodeProgress progress) {
+        encodes.computeIfPresent(id, (k, e) -> new ActiveEncode(e.id(), e.durationSec(), e.startedAtMs(), progress));
+    }
+
+    public void encodeFinished(String id) {
+        encodes.remove(id);
+    }
+
+    public Map<String, ActiveEncode> activeEncodes() {
+        return Map.copyOf(encodes);
+    }
+
+    private double averageEncodeSpeed() {
+        return encodes.values().stream()
+                .filter(e -> e.last() != null)
+                .mapToDouble(e -> e.last().speed())
+                .average()
+                .orElse(0.0);
+    }
+
+    // ---------------------------
+    // Exposition
+    // ---------------------------
+
+    /** Renders every metric in the Prometheus text exposition format (version 0.0.4). */
+    public String scrape() {
+        StringBuilder sb = new StringBuilder();
+
+        for (Map.Entry<String, Family> fe : new TreeMap<>(families).entrySet()) {
+            String name = fe.getKey();
+            Family f = fe.getValue();
+            sb.append("# HELP ").append(name).append(' ').append(f.help).append('\n');
+            sb.append("# TYPE ").append(name).append(' ').append(f.type).append('\n');
+
+            for (Map.Entry<String, Object> se : new TreeMap<>(f.series).entrySet()) {
+                String labels = se.getKey();
+                Object series = se.getValue();
+
+                if (series instanceof LongAdder counter) {
+                    sample(sb, name, labels, counter.sum());
+                } else if (series instanceof Supplier<?> gauge) {
+                    sample(sb, name, labels, ((Number) gauge.get()).doubleValue());
+                } else if (series instanceof Histogram h) {
+                    for (int i = 0; i < Histogram.BUCKETS.length; i++) {
+                        sample(sb, name + "_bucket", join(labels, label("le", format(Histogram.BUCKETS[i]))), h.cumulative(i));
+                    }
+                    sample(sb, name + "_bucket", join(labels, label("le", "+Inf")), h.count());
+                    sample(sb, name + "_sum", labels, h.sum());
+                    sample(sb, name + "_count", labels, h.count());
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void sample(StringBuilder sb, String name, String labels, double value) {
+        sb.append(name);
+        if (!labels.isEmpty()) sb.append('{').append(labels).append('}');
+        sb.append(' ').append(format(value)).append('\n');
+    }
+
+    private static String join(String labels, String extra) {
+        return labels.isEmpty() ? extra : labels + "," + extra;
+    }
+
+    private static String format(double v) {
+        if (v == Math.rint(v) && !Double.isInfinite(v)) return Long.toString((long) v);
+        return String.format(Locale.ROOT, "%s", v);
+    }
+
+    private static final class Family {
+        final String type;
+        final String help;
+        final Map<String, Object> series = new ConcurrentHashMap<>();
+
+        Family(String type, String help) {
+            this.type = type;
+            this.help = help;
+        }
+    }
+
+    /** An encode in flight; {@code last} is null until ffmpeg sends its first progress report. */
+    public record ActiveEncode(String id, double durationSec, long startedAtMs, EncodeProgress last) {
+        public long lastUpdateMs() {
+            return last == null ? startedAtMs : last.updatedAtMs();
+        }
+    }
+}
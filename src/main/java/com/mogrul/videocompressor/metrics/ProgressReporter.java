@@ -0,0 +1,66 @@
+package com.mogrul.videocompressor.metrics;
+
+import com.mogrul.videocompressor.record.EncodeProgress;
+import com.mogrul.videocompressor.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/** Periodically logs every running encode and warns about encodes that stopped reporting progress. */
+public final class ProgressReporter implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ProgressReporter.class);
+    private static final long REPORT_SECONDS = 30;
+    private static final long STALL_MS = 120_000;
+
+    private final MetricsRegistry metrics;
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("ProgressReporter"));
+
+    public ProgressReporter(MetricsRegistry metrics) {
+        this.metrics = metrics;
+    }
+
+    public void start() {
+        scheduler.scheduleAtFixedRate(this::report, REPORT_SECONDS, REPORT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private void report() {
+        long now = System.currentTimeMillis();
+
+        for (MetricsRegistry.ActiveEncode e : metrics.activeEncodes().values()) {
+            long quietMs = now - e.lastUpdateMs();
+            if (quietMs > STALL_MS) {
+                logger.warn("[STALLED] {} has reported no progress for {}s", e.id(), quietMs / 1000);
+                continue;
+            }
+
+            EncodeProgress p = e.last();
+            if (p == null) continue;
+
+            double doneSec = p.outTimeMs() / 1000.0;
+            String percent = e.durationSec() > 0
+                    ? String.format(Locale.ROOT, "%.1f%%", Math.min(100.0, doneSec * 100 / e.durationSec()))
+                    : "?%";
+            String eta = p.speed() > 0 && e.durationSec() > 0
+                    ? clock((long) ((e.durationSec() - doneSec) / p.speed()))
+                    : "?";
+
+            logger.info("[PROGRESS] {} {} frame={} fps={} speed={}x bitrate={} eta {}",
+                    e.id(), percent, p.frame(), p.fps(), p.speed(), p.bitrate(), eta);
+        }
+    }
+
+    private static String clock(long seconds) {
+        seconds = Math.max(0, seconds);
+        return String.format(Locale.ROOT, "%02d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
@@ -10,13 +10,51 @@ public record ArgumentList() {
     public static Argument ffprobePath = new Argument("ffprobe", "[String] The absolute path of ffprobe.exe");
     public static Argument targetFps = new Argument("fps", "[Number] The target FPS the compressor will compress to.");
     public static Argument workers = new Argument("workers", "[Number] The amount of worker threads to be running simultaneously.");
+    public static Argument downloadWorkers = new Argument("download-workers", "[Number] The amount of files downloaded to the local stage simultaneously.");
+    public static Argument encodeWorkers = new Argument("encode-workers", "[Number] The amount of transcodes running simultaneously (defaults to --workers).");
+    public static Argument uploadWorkers = new Argument("upload-workers", "[Number] The amount of compressed files uploaded simultaneously.");
+    public static Argument queueSize = new Argument("queue-size", "[Number] The amount of scanned files allowed to wait for a free worker before scanning pauses.");
+    public static Argument prefetch = new Argument("prefetch", "[Number] The amount of downloaded inputs kept ready ahead of the encoders.");
+    public static Argument stageBudget = new Argument("stage-budget", "[Size] The most disk space staged inputs may use, e.g. 200G (0 = only keep the stage disk from filling).");
     public static Argument deleteSource = new Argument("delete-source", "[True/False] whether or not the original file should be deleted after compression.");
     public static Argument downloadFromRemote = new Argument("download-remote", "[True/False] Whether the remote file should be downloaded to a staged local path or not.");
+    public static Argument copyStreams = new Argument("copy-streams", "[Number] The amount of parallel streams used to download/upload a single file.");
+    public static Argument copyChunkSize = new Argument("copy-chunk-size", "[Size] The size of each chunk copied by a stream, e.g. 16M.");
+    public static Argument copyMode = new Argument("copy-mode", "[auto/buffered/zero-copy] How bytes are copied; zero-copy lets the kernel move them (auto uses it on local/NFS file systems).");
+    public static Argument maxDownloadRate = new Argument("max-download-rate", "[Size] The combined download rate per second across all files, e.g. 80M (0 = unlimited).");
+    public static Argument maxUploadRate = new Argument("max-upload-rate", "[Size] The combined upload rate per second across all files, e.g. 40M (0 = unlimited).");
+    public static Argument smartTranscode = new Argument("smart-transcode", "[True/False] Whether already efficient files are skipped, remuxed or only have their audio re-encoded instead of a full transcode. Skipped files are not written to the output folder.");
+    public static Argument maxBitsPerPixel = new Argument("max-bits-per-pixel", "[Number] The highest video bits per pixel per frame still considered efficient by --smart-transcode.");
+    public static Argument segmentEncode = new Argument("segment-encode", "[True/False] Whether long files are split across idle encoders once the batch is draining.");
+    public static Argument segmentMinDuration = new Argument("segment-min-duration", "[Number] The shortest video, in seconds, that is worth splitting with --segment-encode.");
     public static Argument outputWidth = new Argument("output-width", "[Number] The width of the output files to be compressed.");
     public static Argument outputHeight = new Argument("output-height", "[Number] The height of the output files.");
+    public static Argument metricsPort = new Argument("metrics-port", "[Number] Port for the Prometheus /metrics endpoint, 0 disables it.");
+    public static Argument stampAlgorithm = new Argument("stamp-algorithm", "[Text] How file contents are fingerprinted: xxh64-sampled, sha256-sampled or sha256-head.");
+    public static Argument paranoid = new Argument("paranoid", "[True/False] Whether every file's content fingerprint is read before skipping it, not just its size and modified time.");
+    public static Argument indexMemoryLimit = new Argument("index-memory-limit", "[Size] Heap the in-memory index of finished files may use, e.g. 512M; 0 checks every file against the database.");
+    public static Argument scanThreads = new Argument("scan-threads", "[Number] The amount of directories listed at the same time while scanning.");
+    public static Argument fullRescan = new Argument("full-rescan", "[True/False] Whether every directory is listed again, ignoring what the last scan saw.");
+    public static Argument watch = new Argument("watch", "[True/False] Whether to keep running and compress new files as they appear.");
+    public static Argument watchPollInterval = new Argument("watch-poll-interval", "[Integer] Seconds between polls of the input folder in watch mode.");
+    public static Argument stableSeconds = new Argument("stable-seconds", "[Integer] Seconds a file's size and modification time must stay unchanged before it is picked up.");
+    public static Argument schedulePolicy = new Argument("schedule", "[fifo/largest-first/smallest-first/oldest-first] Order in which waiting files are started.");
+    public static Argument scheduleWindow = new Argument("schedule-window", "[Integer] How many scanned files are held and ranked before they are started.");
+    public static Argument adaptiveEncode = new Argument("adaptive-encode", "[True/False] Whether the number of encode workers adapts to CPU, encode speed and disk throughput.");
+    public static Argument minEncodeWorkers = new Argument("min-encode-workers", "[Integer] Fewest encode workers the adaptive controller may use.");
+    public static Argument maxEncodeWorkers = new Argument("max-encode-workers", "[Integer] Most encode workers the adaptive controller may use, 0 for one per CPU core.");
+    public static Argument virtualThreads = new Argument("virtual-threads", "[True/False] Whether pipeline stages run on virtual threads with semaphore limits.");
+    public static Argument checkWorkers = new Argument("check-workers", "[Integer] How many files may be stamped and checked against the database at once.");
+    public static Argument retries = new Argument("retries", "[Integer] How many times a failed stage is tried again within a run.");
+    public static Argument retryBackoff = new Argument("retry-backoff", "[Integer] Seconds before the first retry of a failed stage; doubles for each further retry.");
 
     public static List<Argument> arguments = List.of(
-            help, inputRoot, outputRoot, ffmpegPath, ffprobePath, targetFps, workers, deleteSource, downloadFromRemote,
-            outputWidth, outputHeight
+            help, inputRoot, outputRoot, ffmpegPath, ffprobePath, targetFps, workers, downloadWorkers, encodeWorkers,
+            uploadWorkers, queueSize, prefetch, stageBudget, deleteSource, downloadFromRemote, copyStreams, copyChunkSize,
+            copyMode, maxDownloadRate, maxUploadRate, smartTranscode, maxBitsPerPixel,
+            segmentEncode, segmentMinDuration, outputWidth, outputHeight, metricsPort, stampAlgorithm,
+            paranoid, indexMemoryLimit, scanThreads, fullRescan, watch, watchPollInterval, stableSeconds,
+            schedulePolicy, scheduleWindow, adaptiveEncode, minEncodeWorkers, maxEncodeWorkers, virtualThreads,
+            checkWorkers, retries, retryBackoff
     );
 }
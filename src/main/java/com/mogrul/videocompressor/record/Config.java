@@ -1,5 +1,9 @@
 package com.mogrul.videocompressor.record;
 
+import com.mogrul.videocompressor.enu.CopyMode;
+import com.mogrul.videocompressor.enu.SchedulePolicy;
+import com.mogrul.videocompressor.enu.StampAlgorithm;
+
 import java.nio.file.Path;
 
 public record Config(
@@ -10,10 +14,42 @@ public record Config(
         Path ffprobePath,
         Path dbPath,
         int fps,
-        int workers,
+        int downloadWorkers,
+        int encodeWorkers,
+        int uploadWorkers,
+        int queueSize,
+        int prefetch,
+        long stageBudgetBytes,
         int outputHeight,
         int outputWidth,
         boolean deleteSourceAfterSuccess,
-        boolean downloadFromRemote
+        boolean downloadFromRemote,
+        int copyStreams,
+        int copyChunkSize,
+        CopyMode copyMode,
+        long maxDownloadRate,
+        long maxUploadRate,
+        boolean smartTranscode,
+        double maxBitsPerPixel,
+        boolean segmentEncode,
+        int segmentMinDurationSec,
+        int metricsPort,
+        StampAlgorithm stampAlgorithm,
+        boolean paranoid,
+        long indexMemoryLimit,
+        int scanThreads,
+        boolean fullRescan,
+        boolean watch,
+        int watchPollInterval,
+        int stableSeconds,
+        SchedulePolicy schedulePolicy,
+        int scheduleWindow,
+        boolean adaptiveEncode,
+        int minEncodeWorkers,
+        int maxEncodeWorkers,
+        boolean virtualThreads,
+        int checkWorkers,
+        int retries,
+        int retryBackoff
 ) {
 }
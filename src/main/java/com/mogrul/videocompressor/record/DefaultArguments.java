@@ -1,5 +1,9 @@
 package com.mogrul.videocompressor.record;
 
+import com.mogrul.videocompressor.enu.CopyMode;
+import com.mogrul.videocompressor.enu.SchedulePolicy;
+import com.mogrul.videocompressor.enu.StampAlgorithm;
+
 import java.nio.file.Path;
 
 public record DefaultArguments() {
@@ -7,8 +11,40 @@ public record DefaultArguments() {
     public static final Path ffprobePath = Path.of("ffmpeg/ffprobe");
     public static final int fps = 25;
     public static final int workers = 4;
+    public static final int downloadWorkers = 2;
+    public static final int uploadWorkers = 2;
+    public static final int queueSize = 32;
+    public static final int prefetch = 2;
+    public static final long stageBudget = 0L;
     public static final boolean deleteSource = false;
     public static final boolean downloadFromRemote = true;
+    public static final int copyStreams = 4;
+    public static final long copyChunkSize = 16L * 1024 * 1024;
+    public static final CopyMode copyMode = CopyMode.AUTO;
+    public static final long maxDownloadRate = 0L;
+    public static final long maxUploadRate = 0L;
+    public static final boolean smartTranscode = false;
+    public static final double maxBitsPerPixel = 0.1;
+    public static final boolean segmentEncode = true;
+    public static final int segmentMinDuration = 1200;
     public static final int outputHeight = 720;
     public static final int outputWidth = 1280;
+    public static final int metricsPort = 0;
+    public static final StampAlgorithm stampAlgorithm = StampAlgorithm.XXH64_SAMPLED;
+    public static final boolean paranoid = false;
+    public static final long indexMemoryLimit = 512L * 1024 * 1024;
+    public static final int scanThreads = 8;
+    public static final boolean fullRescan = false;
+    public static final boolean watch = false;
+    public static final int watchPollInterval = 60;
+    public static final int stableSeconds = 30;
+    public static final SchedulePolicy schedulePolicy = SchedulePolicy.LARGEST_FIRST;
+    public static final int scheduleWindow = 1024;
+    public static final boolean adaptiveEncode = true;
+    public static final int minEncodeWorkers = 1;
+    public static final int maxEncodeWorkers = 0;
+    public static final boolean virtualThreads = true;
+    public static final int checkWorkers = 256;
+    public static final int retries = 3;
+    public static final int retryBackoff = 10;
 }
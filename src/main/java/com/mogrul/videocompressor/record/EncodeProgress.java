@@ -0,0 +1,13 @@
+package com.mogrul.videocompressor.record;
+
+/** One ffmpeg {@code -progress} report; {@code outTimeMs} is how far into the output the encode is. */
+public record EncodeProgress(
+        long frame,
+        double fps,
+        double speed,
+        long outTimeMs,
+        String bitrate,
+        long totalSize,
+        long updatedAtMs
+) {
+}
@@ -0,0 +1,14 @@
+package com.mogrul.videocompressor.record;
+
+import com.mogrul.videocompressor.enu.FailureKind;
+
+/**
+ * The last failure of a file. {@code attempts} counts the runs it has failed in a row for this {@code stamp};
+ * until {@code nextAttemptAtMs} a scan leaves it alone.
+ */
+public record FailureRecord(
+        FileStamp stamp,
+        FailureKind kind,
+        int attempts,
+        long nextAttemptAtMs
+) {}
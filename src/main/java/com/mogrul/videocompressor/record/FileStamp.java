@@ -1,8 +1,18 @@
 package com.mogrul.videocompressor.record;
 
+/**
+ * What a source file looked like when it was last seen. {@code fileKey} is the file system's identity for the
+ * file (inode) where it has one. A metadata-only stamp has no {@code partialHash}/{@code algorithm}: it is
+ * enough to recognise an untouched file, not to record a new one.
+ */
 public record FileStamp(
         long size,
         long mtimeMs,
-        String partialSha256
+        String fileKey,
+        String partialHash,
+        String algorithm
 ) {
+    public boolean hasFingerprint() {
+        return partialHash != null;
+    }
 }
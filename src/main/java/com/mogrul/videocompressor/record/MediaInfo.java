@@ -0,0 +1,34 @@
+package com.mogrul.videocompressor.record;
+
+import com.mogrul.videocompressor.enu.VideoCodec;
+
+import java.util.List;
+
+/** What ffprobe reports about a media file; bit rates are in bits per second, 0 when unknown. */
+public record MediaInfo(
+        String formatName,
+        double durationSec,
+        long bitRate,
+        long sizeBytes,
+        VideoCodec videoCodec,
+        String videoCodecName,
+        int width,
+        int height,
+        double fps,
+        long videoBitRate,
+        String pixelFormat,
+        boolean hdr,
+        List<AudioStream> audioStreams
+) {
+    public boolean hasVideo() {
+        return videoCodecName != null;
+    }
+
+    public record AudioStream(
+            int index,
+            String codecName,
+            int channels,
+            int sampleRate,
+            long bitRate
+    ) {}
+}
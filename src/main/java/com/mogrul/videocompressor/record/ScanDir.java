@@ -0,0 +1,18 @@
+package com.mogrul.videocompressor.record;
+
+/**
+ * A directory as of the last scan. {@code complete} means every video in it was compressed or skipped by the end
+ * of that run, so an unchanged mtime lets the next scan trust it without listing it again.
+ */
+public record ScanDir(
+        String path,
+        String parent,
+        long mtimeMs,
+        int entryCount,
+        int videoCount,
+        boolean complete
+) {
+    public ScanDir incomplete() {
+        return new ScanDir(path, parent, mtimeMs, entryCount, videoCount, false);
+    }
+}
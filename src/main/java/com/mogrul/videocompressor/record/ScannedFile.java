@@ -0,0 +1,16 @@
+package com.mogrul.videocompressor.record;
+
+import java.nio.file.Path;
+
+/** A video found by the scanner, with the attributes the directory listing already returned. */
+public record ScannedFile(
+        Path path,
+        long size,
+        long mtimeMs,
+        String fileKey
+) {
+    /** Metadata-only stamp for the skip check, no further file system call needed. */
+    public FileStamp metadata() {
+        return new FileStamp(size, mtimeMs, fileKey, null, null);
+    }
+}
@@ -0,0 +1,44 @@
+package com.mogrul.videocompressor.service;
+
+import com.mogrul.videocompressor.enu.TranscodeAction;
+import com.mogrul.videocompressor.record.FileStamp;
+import com.mogrul.videocompressor.record.MediaInfo;
+import com.mogrul.videocompressor.record.ScannedFile;
+import com.mogrul.videocompressor.util.StagePlanner;
+
+import java.nio.file.Path;
+
+/** State of one file as it moves through the pipeline stages. */
+final class CompressionJob {
+    final Path remoteInput;
+    final String sourceKey;
+    // Size, mtime and file key as the scanner saw them
+    final ScannedFile scanned;
+
+    FileStamp stamp;
+    MediaInfo mediaInfo;
+    TranscodeAction action;
+    StagePlanner.StagePaths paths;
+
+    // Where the transcode reads from and writes to (local stage or remote, depending on --download-remote)
+    Path input;
+    Path outputTmp;
+    Path output;
+
+    // True while the job holds a reservation for its staged input in the StageBudget
+    boolean staged;
+
+    // Stage retries used so far in this run
+    int retries;
+    // Runs in a row this file had already failed in, from the store
+    int failedRuns;
+    // Set once the output is at its final remote path, so a retried upload stage doesn't upload again
+    boolean uploaded;
+    long outputSize;
+
+    CompressionJob(ScannedFile scanned) {
+        this.remoteInput = scanned.path();
+        this.sourceKey = remoteInput.toAbsolutePath().toString();
+        this.scanned = scanned;
+    }
+}
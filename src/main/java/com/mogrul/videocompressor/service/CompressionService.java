@@ -2,23 +2,45 @@ package com.mogrul.videocompressor.service;
 
 import com.mogrul.videocompressor.ffmpeg.FfmpegTranscoder;
 import com.mogrul.videocompressor.ffmpeg.Ffprobe;
+import com.mogrul.videocompressor.ffmpeg.ProbeCache;
+import com.mogrul.videocompressor.ffmpeg.SegmentedTranscoder;
+import com.mogrul.videocompressor.enu.FailureKind;
+import com.mogrul.videocompressor.enu.SchedulePolicy;
+import com.mogrul.videocompressor.enu.TranscodeAction;
+import com.mogrul.videocompressor.inter.StageExecutor;
 import com.mogrul.videocompressor.inter.StampStore;
+import com.mogrul.videocompressor.inter.TranscodePolicy;
+import com.mogrul.videocompressor.metrics.MetricsRegistry;
+import com.mogrul.videocompressor.metrics.ProgressReporter;
 import com.mogrul.videocompressor.record.Config;
+import com.mogrul.videocompressor.record.FailureRecord;
 import com.mogrul.videocompressor.record.FileStamp;
 import com.mogrul.videocompressor.record.JobConfig;
+import com.mogrul.videocompressor.record.MediaInfo;
+import com.mogrul.videocompressor.record.ScanDir;
+import com.mogrul.videocompressor.record.ScannedFile;
 import com.mogrul.videocompressor.util.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.util.ArrayList;
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.mogrul.videocompressor.metrics.MetricsRegistry.*;
 
 public class CompressionService {
     private final Logger logger = LoggerFactory.getLogger(CompressionService.class);
@@ -28,9 +50,36 @@ public class CompressionService {
     private final StampStore store;
     private final FfmpegTranscoder transcoder;
     private final Ffprobe ffprobe;
+    private final ProbeCache probeCache;
+    private final TranscodePolicy policy;
+    private final SegmentedTranscoder segmentedTranscoder;
+    private final MetricsRegistry metrics;
 
     private final StagePlanner planner;
     private final FileStager stager;
+    private final StageBudget stageBudget;
+    private final RetryPolicy retryPolicy;
+
+    private StageExecutor checkPool;
+    private StageExecutor downloadPool;
+    private StageExecutor encodePool;
+    private StageExecutor uploadPool;
+    private DirectoryWatcher watcher;
+    // Orders files ahead of the download stage; null when they go in scan order
+    private JobScheduler<CompressionJob> scheduler;
+    // Jobs accepted from the scanner that haven't finished yet
+    private final AtomicInteger pendingJobs = new AtomicInteger();
+    private final ReentrantLock jobsLock = new ReentrantLock();
+    private final Condition allJobsFinished = jobsLock.newCondition();
+    // Counted down once run() has drained the pipeline and closed the store
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final AtomicBoolean scanComplete = new AtomicBoolean();
+    // Source paths queued or running, so a file seen again while in the pipeline isn't queued twice
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    // Directories with a file that wasn't handled this run; they are listed again next time
+    private final Set<String> incompleteDirs = ConcurrentHashMap.newKeySet();
+    // Staged inputs crash recovery kept for requeued jobs, pinned in the stage budget until those jobs finish
+    private final Set<Path> recoveredInputs = ConcurrentHashMap.newKeySet();
 
     public CompressionService(
             Config config,
@@ -38,107 +87,506 @@ public class CompressionService {
             StampCalculator stamper,
             StampStore store,
             FfmpegTranscoder transcoder,
-            Ffprobe ffprobe
-    ) {
+            Ffprobe ffprobe,
+            TranscodePolicy policy,
+            MetricsRegistry metrics
+    ) throws IOException {
         this.config = config;
         this.scanner = scanner;
         this.stamper = stamper;
         this.store = store;
         this.transcoder = transcoder;
         this.ffprobe = ffprobe;
+        this.probeCache = new ProbeCache(ffprobe, store);
+        this.policy = policy;
+        this.segmentedTranscoder = new SegmentedTranscoder(transcoder, ffprobe);
+        this.metrics = metrics;
 
         this.planner = new StagePlanner(config.inputRoot(), config.outputRoot(), config.localStageRoot());
-        this.stager = new FileStager();
+        this.stager = new FileStager(config.copyStreams(), config.copyChunkSize(), config.copyMode(),
+                config.maxDownloadRate(), config.maxUploadRate(), metrics);
+        this.stageBudget = new StageBudget(config.localStageRoot(), config.stageBudgetBytes());
+        this.retryPolicy = new RetryPolicy(config.retries(), config.retryBackoff() * 1000L);
     }
 
     public void run() throws Exception {
-        ExecutorService pool = Executors.newFixedThreadPool(
-                config.workers(),
-                new NamedThreadFactory("CompressionService")
-        );
-        List<Future<?>> futures = new ArrayList<>();
+        // Before the stage budget looks at the stage, so inputs recovery deletes aren't counted
+        CrashRecovery.Result recovered = recoverInterrupted();
+        List<ScannedFile> interrupted = recovered.requeue();
+
+        if (config.downloadFromRemote()) {
+            // Inputs kept for requeued jobs stay pinned until those jobs reserve them, or finish without doing so
+            for (Path p : recovered.keptInputs()) recoveredInputs.add(p.toAbsolutePath());
+            stageBudget.registerExisting(planner.stagedInputRoot(), recovered.keptInputs());
+        }
+
+        // Each stage has its own pool; a full downstream queue blocks the stage feeding it, which
+        // keeps the scanner, downloads, encodes and uploads overlapping without running away from each other.
+        // The check stage (stamp + skip) mostly waits on small reads and the store, so it gets many workers.
+        checkPool = stage("Check", config.checkWorkers(), config.queueSize(), false);
+        downloadPool = stage("Download", config.downloadWorkers(), config.queueSize(), false);
+        // The encode queue is the prefetch window: downloaded inputs waiting for a free encoder
+        encodePool = stage("Encode", config.encodeWorkers(), config.prefetch(),
+                config.schedulePolicy() != SchedulePolicy.FIFO);
+        uploadPool = stage("Upload", config.uploadWorkers(), config.queueSize(), false);
+
+        registerPoolGauges("check", checkPool);
+        registerPoolGauges("download", downloadPool);
+        registerPoolGauges("encode", encodePool);
+        registerPoolGauges("upload", uploadPool);
+
+        ProgressReporter progressReporter = new ProgressReporter(metrics);
+        progressReporter.start();
+
+        EncodeConcurrencyController encodeController = null;
+        if (config.adaptiveEncode()) {
+            int maxEncoders = config.maxEncodeWorkers() > 0
+                    ? config.maxEncodeWorkers()
+                    : Runtime.getRuntime().availableProcessors();
+            encodeController = new EncodeConcurrencyController(encodePool, downloadPool, metrics,
+                    config.minEncodeWorkers(), maxEncoders);
+            encodeController.start();
+        }
+
+        // Directories to trust without listing; none on a full rescan
+        Map<String, ScanDir> previousDirs = config.fullRescan() ? Map.of() : store.loadScanDirs();
+        Collection<ScanDir> scannedDirs = null;
+        Thread shutdownHook = null;
 
         try {
-            scanner.scan(config.inputRoot(), input -> {
-                futures.add(pool.submit(() -> {
-                    try {
-                        processOne(input);
-                    } catch (Exception e) {
-                        logger.error("[FAIL] {} :: {}", input, e.getMessage());
-                    }
-                }));
-            });
+            if (config.schedulePolicy() != SchedulePolicy.FIFO) {
+                scheduler = new JobScheduler<>("Scheduler", config.scheduleWindow(), this::start);
+            }
+
+            if (config.watch()) {
+                // Registered before the scan so files that appear while it runs aren't missed
+                watcher = new DirectoryWatcher(config.inputRoot(), scanner, config.watchPollInterval() * 1000L,
+                        config.stableSeconds() * 1000L, this::enqueue);
+                watcher.start();
+
+                // Watch mode only ends on a signal; the hook stops the watcher and holds the JVM until the
+                // finally below has drained the pipeline and flushed the store
+                shutdownHook = new Thread(this::stopWatching, "Shutdown");
+                Runtime.getRuntime().addShutdownHook(shutdownHook);
+            }
+
+            // Files a crash cut short go first; the scan skips them as already queued
+            for (ScannedFile file : interrupted) enqueue(file, true);
 
-            for (Future<?> f : futures) f.get();
+            scannedDirs = scanner.scan(config.inputRoot(), previousDirs, this::accept);
+            scanComplete.set(true);
+            if (scheduler != null) scheduler.release();
+
+            // The pools stay up, so files found by the watcher start straight away
+            if (watcher != null) watcher.run(scannedDirs);
 
         } finally {
-            pool.shutdown();
-            pool.awaitTermination(365, TimeUnit.DAYS);
-            store.close();
+            try {
+                if (watcher != null) watcher.close();
+                if (scheduler != null) scheduler.close();
+                // A retry waiting out its backoff isn't in any pool yet, so wait for the jobs rather than the pools
+                awaitJobs();
+                checkPool.shutdownAndAwait();
+                downloadPool.shutdownAndAwait();
+                encodePool.shutdownAndAwait();
+                uploadPool.shutdownAndAwait();
+                // Only a scan that ran to the end describes the whole tree; saved once every job has settled
+                if (scannedDirs != null) saveScanDirs(scannedDirs);
+                if (encodeController != null) encodeController.close();
+                progressReporter.close();
+                stager.close();
+                store.close();
+            } finally {
+                stopped.countDown();
+                if (shutdownHook != null) removeShutdownHook(shutdownHook);
+            }
         }
     }
 
-    private void processOne(Path remoteInput) throws Exception {
-        FileStamp stamp = stamper.stamp(remoteInput);
-        String sourceKey = remoteInput.toAbsolutePath().toString();
-
-        if (store.isUpToDate(sourceKey, stamp)) {
-            logger.info("[SKIP] {}", remoteInput);
-            return;
+    /** Runs on JVM shutdown in watch mode: ends the watch and waits for run() to finish cleaning up. */
+    private void stopWatching() {
+        logger.info("[WATCH] Stopping, waiting for {} job(s) still in the pipeline", pendingJobs.get());
+        watcher.close();
+        try {
+            stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+    }
 
-        var paths = planner.plan(remoteInput);
-        store.markRunning(sourceKey, stamp);
+    private static void removeShutdownHook(Thread hook) {
+        try {
+            Runtime.getRuntime().removeShutdownHook(hook);
+        } catch (IllegalStateException shuttingDown) {
+            // The hook is already running and only waited for this
+        }
+    }
 
+    private void saveScanDirs(Collection<ScanDir> dirs) {
         try {
-            Path input;
-            Path outputTmp;
-            Path output;
-            Path remoteTmpOutput = null;
-            Path remoteOutput = null;
+            store.saveScanDirs(dirs.stream()
+                    .map(d -> incompleteDirs.contains(d.path()) ? d.incomplete() : d)
+                    .toList());
+        } catch (Exception e) {
+            logger.error("[SCAN] Could not save the directory index, the next scan lists everything :: {}", e.getMessage());
+        }
+    }
 
-            if (config.downloadFromRemote()) {
-                input = paths.localInput();
-                outputTmp = paths.localTmpOutput();
-                output = paths.localFinalOutput();
-                remoteOutput = paths.remoteFinalOut();
-                remoteTmpOutput = paths.remoteTmpOut();
-
-                // Downloads locally and transcode from local directory
-                stager.download(remoteInput, input);
+    /** A file from the initial scan; recently modified ones may still be written to and aren't queued yet. */
+    private void accept(ScannedFile scanned) {
+        long ageMs = System.currentTimeMillis() - scanned.mtimeMs();
+        if (ageMs < config.stableSeconds() * 1000L) {
+            // Either way the file isn't handled by this scan, so its directory must be listed again next time
+            incompleteDirs.add(scanned.path().getParent().toString());
+            if (watcher != null) {
+                watcher.offer(scanned);
             } else {
-                input = remoteInput;
-                outputTmp = paths.remoteTmpOut();
-                output = paths.remoteFinalOut();
+                logger.info("[BUSY] {} changed in the last {}s, leaving it for the next run", scanned.path(),
+                        config.stableSeconds());
             }
+            return;
+        }
+        enqueue(scanned);
+    }
 
-            Files.createDirectories(outputTmp.getParent());
-            transcoder.transcode(input, outputTmp, ffprobe);
-            Files.createDirectories(output.getParent());
-            Files.move(outputTmp, output,
-                    StandardCopyOption.REPLACE_EXISTING
-            );
+    private CrashRecovery.Result recoverInterrupted() {
+        try {
+            return new CrashRecovery(config, store, stamper, planner, stager).run();
+        } catch (Exception e) {
+            logger.error("[RECOVER] Recovery failed, interrupted jobs are picked up by the scan :: {}", e.getMessage());
+            return CrashRecovery.Result.NONE;
+        }
+    }
 
-            if (config.downloadFromRemote()) {
-                if (remoteTmpOutput == null || remoteOutput == null) throw new IllegalArgumentException(
-                        "remoteTmpOutput or remoteOutput is null"
-                );
+    private void enqueue(ScannedFile scanned) {
+        enqueue(scanned, false);
+    }
+
+    /** @param first start right away instead of waiting for a place in the schedule */
+    private void enqueue(ScannedFile scanned, boolean first) {
+        CompressionJob job = new CompressionJob(scanned);
+        if (!inFlight.add(job.sourceKey)) return;
+
+        metrics.increment(FILES_SCANNED);
+        pendingJobs.incrementAndGet();
+        if (scheduler == null || first) {
+            start(job);
+            return;
+        }
+
+        // Only size is known this early; stamping and probing happen once the job is started
+        try {
+            scheduler.put(job, config.schedulePolicy().rank(scanned.size(), scanned.mtimeMs()));
+        } catch (InterruptedException e) {
+            finish(job);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while scheduling " + job.remoteInput, e);
+        }
+    }
 
-                stager.uploadAtomic(output, remoteTmpOutput, remoteOutput);
-                stager.cleanup(input, output);
+    private void start(CompressionJob job) {
+        try {
+            startChain(job);
+        } catch (RuntimeException e) {
+            finish(job);
+            throw e;
+        }
+    }
+
+    private void startChain(CompressionJob job) {
+        handOff(checkPool, job, 0, () -> {
+            if (!check(job)) {
+                finish(job);
+                return;
             }
+            handOff(downloadPool, job, 0, () -> {
+                if (!probeAndDownload(job)) {
+                    finish(job);
+                    return;
+                }
+                handOff(encodePool, job, encodeRank(job), () -> {
+                    transcodeAndValidate(job);
+                    handOff(uploadPool, job, 0, () -> {
+                        uploadAndCommit(job);
+                        finish(job);
+                    });
+                });
+            });
+        });
+    }
+
+    /** Virtual threads with semaphore limits, or the platform thread pools. */
+    private StageExecutor stage(String name, int workers, int queueCapacity, boolean prioritised) {
+        return config.virtualThreads()
+                ? new VirtualStageExecutor(name, workers, queueCapacity)
+                : new BoundedExecutor(name, workers, queueCapacity, prioritised);
+    }
+
+    private void registerPoolGauges(String stage, StageExecutor pool) {
+        String labels = label("stage", stage);
+        metrics.gauge("videocompressor_queue_depth", "Jobs waiting for a worker in each stage.", labels, pool::queued);
+        metrics.gauge("videocompressor_workers_busy", "Workers running a job in each stage.", labels, pool::active);
+        metrics.gauge("videocompressor_worker_utilisation", "Busy fraction of each stage's workers.", labels,
+                () -> (double) pool.active() / pool.workers());
+    }
+
+    private void observe(String stage, long startNanos) {
+        metrics.observe(STAGE_DURATION, label("stage", stage), (System.nanoTime() - startNanos) / 1e9);
+    }
+
+    /**
+     * Rank of a downloaded job waiting for an encoder. Work is duration times resolution for a full transcode and
+     * duration alone for stream copies, which cost next to nothing per pixel.
+     */
+    private long encodeRank(CompressionJob job) {
+        MediaInfo info = job.mediaInfo;
+        long durationMs = (long) (info.durationSec() * 1000);
+        long pixels = job.action == TranscodeAction.FULL ? Math.max(1L, (long) info.width() * info.height()) : 1L;
+        return config.schedulePolicy().rank(durationMs * pixels, job.scanned.mtimeMs());
+    }
 
-            if (config.deleteSourceAfterSuccess()) {
-                stager.cleanup(remoteInput);
+    private void handOff(StageExecutor pool, CompressionJob job, long rank, StageTask task) {
+        try {
+            pool.submit(() -> {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    if (!retryLater(pool, job, rank, task, e)) {
+                        fail(job, e);
+                        finish(job);
+                    }
+                }
+            }, rank);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing " + job.remoteInput, e);
+        }
+    }
+
+    /**
+     * Hands the stage that failed back to its pool after a backoff, when the kind of failure is worth another try.
+     * Only that stage runs again, on what the earlier stages left behind: a failed upload re-uploads the output
+     * already encoded. Returns false when the job has to fail instead.
+     */
+    private boolean retryLater(StageExecutor pool, CompressionJob job, long rank, StageTask task, Exception e) {
+        FailureKind kind = FailureClassifier.classify(e);
+        long delayMs = retryPolicy.retryDelayMs(kind, job.retries);
+        if (delayMs < 0) return false;
+
+        job.retries++;
+        metrics.add(STAGE_RETRIES, label("kind", kind.name()), 1);
+        logger.warn("[RETRY] {} ({}), retry {} in {}s :: {}", job.remoteInput, kind, job.retries,
+                (delayMs + 999) / 1000, e.getMessage());
+
+        // The backoff sleeps on its own virtual thread so it holds no stage worker
+        Thread.ofVirtual().name("Retry-" + job.remoteInput.getFileName()).start(() -> {
+            try {
+                Thread.sleep(delayMs);
+                handOff(pool, job, rank, task);
+            } catch (InterruptedException | RuntimeException retryError) {
+                fail(job, e);
+                finish(job);
             }
+        });
+        return true;
+    }
 
-            store.markDone(sourceKey, stamp, paths.remoteFinalOut().toString());
+    private void finish(CompressionJob job) {
+        inFlight.remove(job.sourceKey);
+        if (!recoveredInputs.isEmpty()) {
+            // A recovered job that skipped or failed before its download no longer needs its input pinned
+            Path input = planner.plan(job.remoteInput).localInput().toAbsolutePath();
+            if (recoveredInputs.remove(input)) stageBudget.abandon(input);
+        }
+        if (pendingJobs.decrementAndGet() > 0) return;
 
-            logger.info("[DONE] {} -> {}", remoteInput, paths.remoteFinalOut());
+        jobsLock.lock();
+        try {
+            allJobsFinished.signalAll();
+        } finally {
+            jobsLock.unlock();
+        }
+    }
 
-        } catch (Exception e) {
-            store.markFailed(sourceKey, stamp, e.toString());
-            throw e;
+    private void awaitJobs() {
+        jobsLock.lock();
+        try {
+            while (pendingJobs.get() > 0) allJobsFinished.awaitUninterruptibly();
+        } finally {
+            jobsLock.unlock();
+        }
+    }
+
+    private void fail(CompressionJob job, Exception e) {
+        FailureKind kind = FailureClassifier.classify(e);
+        int attempts = job.failedRuns + 1;
+        long now = System.currentTimeMillis();
+        long nextAttemptAt = retryPolicy.nextAttemptAtMs(kind, attempts, now);
+
+        logger.error("[FAIL] {} ({}, failed {} run(s) in a row{}) :: {}", job.remoteInput, kind, attempts,
+                nextAttemptAt > now ? ", next attempt after " + Instant.ofEpochMilli(nextAttemptAt) : "",
+                e.getMessage());
+        metrics.increment(FILES_FAILED);
+        // Its directory has to be listed again next time so the file gets retried
+        incompleteDirs.add(job.remoteInput.getParent().toString());
+        if (job.staged) stageBudget.abandon(job.input);
+        if (job.stamp == null) return;
+
+        try {
+            store.markFailed(job.sourceKey, e.toString(), new FailureRecord(job.stamp, kind, attempts, nextAttemptAt));
+        } catch (Exception storeError) {
+            logger.error("[FAIL] Could not record failure for {} :: {}", job.remoteInput, storeError.getMessage());
+        }
+    }
+
+    /** Stamp + skip check. Returns false when the file is already up to date. */
+    private boolean check(CompressionJob job) throws Exception {
+        long start = System.nanoTime();
+        // Size + mtime (+ file key) first so untouched files are skipped without opening them;
+        // the content hash is only read when that isn't conclusive, or always in paranoid mode
+        FileStamp stamp = job.scanned.metadata();
+        boolean upToDate = !config.paranoid() && store.isUpToDate(job.sourceKey, stamp);
+        if (!upToDate) {
+            if (backingOff(job, stamp)) return false;
+            stamp = stamper.stamp(job.remoteInput, stamp);
+            upToDate = store.isUpToDate(job.sourceKey, stamp);
+        }
+        observe("stamp", start);
+
+        if (upToDate) {
+            logger.info("[SKIP] {}", job.remoteInput);
+            metrics.increment(FILES_SKIPPED);
+            return false;
         }
+
+        job.paths = planner.plan(job.remoteInput);
+        store.markRunning(job.sourceKey, stamp);
+        job.stamp = stamp;
+        return true;
+    }
+
+    /**
+     * True while a file that failed in an earlier run, and hasn't changed since, waits for its next attempt.
+     * Otherwise its run count carries over, so failing again backs off further.
+     */
+    private boolean backingOff(CompressionJob job, FileStamp current) throws Exception {
+        Optional<FailureRecord> failure = store.findFailure(job.sourceKey);
+        if (failure.isEmpty()) return false;
+
+        FailureRecord f = failure.get();
+        // A changed file starts over
+        if (f.stamp().size() != current.size() || f.stamp().mtimeMs() != current.mtimeMs()) return false;
+
+        if (System.currentTimeMillis() < f.nextAttemptAtMs()) {
+            logger.info("[SKIP] {} failed {} run(s) in a row ({}), next attempt after {}", job.remoteInput,
+                    f.attempts(), f.kind(), Instant.ofEpochMilli(f.nextAttemptAtMs()));
+            metrics.increment(FILES_SKIPPED);
+            // Listed again next run, so it is picked up once it is due
+            incompleteDirs.add(job.remoteInput.getParent().toString());
+            return true;
+        }
+        job.failedRuns = f.attempts();
+        return false;
+    }
+
+    /** Probe and policy decision, then stage the input locally. Returns false when the file is left as it is. */
+    private boolean probeAndDownload(CompressionJob job) throws Exception {
+        FileStamp stamp = job.stamp;
+
+        // Probed once here; every later stage reuses it
+        long start = System.nanoTime();
+        job.mediaInfo = probeCache.get(job.remoteInput, job.sourceKey, stamp);
+        job.action = policy.decide(job.mediaInfo);
+        observe("probe", start);
+
+        if (job.action == TranscodeAction.SKIP) {
+            store.markSkipped(job.sourceKey, stamp, job.action);
+            logger.info("[EFFICIENT] {} already meets the target, leaving it as is", job.remoteInput);
+            metrics.increment(FILES_SKIPPED);
+            return false;
+        }
+
+        if (config.downloadFromRemote()) {
+            job.input = job.paths.localInput();
+            job.outputTmp = job.paths.localTmpOutput();
+            job.output = job.paths.localFinalOutput();
+
+            // Downloads locally and transcode from local directory
+            stageBudget.reserve(job.input, stamp.size());
+            job.staged = true;
+            start = System.nanoTime();
+            stager.download(job.remoteInput, job.input);
+            observe("download", start);
+        } else {
+            job.input = job.remoteInput;
+            job.outputTmp = job.paths.remoteTmpOut();
+            job.output = job.paths.remoteFinalOut();
+        }
+        return true;
+    }
+
+    private void transcodeAndValidate(CompressionJob job) throws Exception {
+        Files.createDirectories(job.outputTmp.getParent());
+        long start = System.nanoTime();
+
+        int helpers = segmentHelpers(job);
+        if (helpers > 0) {
+            // Twice as many segments as encoders evens out segments that encode at different speeds
+            segmentedTranscoder.transcode(job.input, job.outputTmp, job.mediaInfo, (helpers + 1) * 2, helpers,
+                    task -> encodePool.trySubmit(task));
+        } else {
+            transcoder.transcode(job.input, job.outputTmp, job.mediaInfo, job.action);
+        }
+        ffprobe.validate(job.outputTmp, job.mediaInfo.durationSec());
+        observe("encode", start);
+
+        Files.createDirectories(job.output.getParent());
+        Files.move(job.outputTmp, job.output,
+                StandardCopyOption.REPLACE_EXISTING
+        );
+    }
+
+    /**
+     * Idle encoders that may help with this file: only for long full transcodes once scanning has finished
+     * and fewer files than cores are left, i.e. when the batch is draining and encoders would otherwise sit idle.
+     */
+    private int segmentHelpers(CompressionJob job) {
+        if (!config.segmentEncode() || job.action != TranscodeAction.FULL || !scanComplete.get()) return 0;
+        if (job.mediaInfo.durationSec() < config.segmentMinDurationSec()) return 0;
+        if (pendingJobs.get() >= Runtime.getRuntime().availableProcessors()) return 0;
+        return encodePool.idle();
+    }
+
+    private void uploadAndCommit(CompressionJob job) throws Exception {
+        // A retry after the output is in place only repeats what follows; the local copy may already be gone
+        if (!job.uploaded) {
+            job.outputSize = Files.size(job.output);
+
+            if (config.downloadFromRemote()) {
+                long start = System.nanoTime();
+                stager.uploadAtomic(job.output, job.paths.remoteTmpOut(), job.paths.remoteFinalOut());
+                observe("upload", start);
+                stager.cleanup(job.output);
+                stageBudget.release(job.input);
+                job.staged = false;
+            }
+            job.uploaded = true;
+        }
+
+        if (config.deleteSourceAfterSuccess()) {
+            stager.cleanup(job.remoteInput);
+        }
+
+        store.markDone(job.sourceKey, job.stamp, job.paths.remoteFinalOut().toString(), job.action);
+
+        metrics.increment(FILES_DONE);
+        metrics.add(BYTES_SAVED, Math.max(0, job.stamp.size() - job.outputSize));
+
+        logger.info("[DONE] {} -> {} ({})", job.remoteInput, job.paths.remoteFinalOut(), job.action);
+    }
+
+    @FunctionalInterface
+    private interface StageTask {
+        void run() throws Exception;
     }
 }
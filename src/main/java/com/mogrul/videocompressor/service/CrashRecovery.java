@@ -0,0 +1,167 @@
+package com.mogrul.videocompressor.service;
+
+import com.mogrul.videocompressor.enu.FailureKind;
+import com.mogrul.videocompressor.inter.StampStore;
+import com.mogrul.videocompressor.record.Config;
+import com.mogrul.videocompressor.record.FailureRecord;
+import com.mogrul.videocompressor.record.FileStamp;
+import com.mogrul.videocompressor.record.ScannedFile;
+import com.mogrul.videocompressor.util.FileStager;
+import com.mogrul.videocompressor.util.SegmentedCopier;
+import com.mogrul.videocompressor.util.StampCalculator;
+import com.mogrul.videocompressor.util.StagePlanner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Startup pass that cleans up after a run that died part way.
+ * <p>
+ * Nothing is running yet, so every partial output ({@code tmp_*} files and segment work directories) in the local
+ * stage is an orphan and is deleted. Jobs the store still lists as RUNNING lose their partial remote output, and
+ * are requeued ahead of the scan. A staged input is kept only when its source hasn't changed since the job started:
+ * a finished download must also match the job's stamp, and an unfinished one resumes where it stopped. Anything
+ * else left in the stage would be reused by size alone, so it is deleted. The kept inputs are returned so the
+ * stage budget can protect them until their jobs get to the download stage.
+ */
+final class CrashRecovery {
+    private static final Logger logger = LoggerFactory.getLogger(CrashRecovery.class);
+
+    private final Config config;
+    private final StampStore store;
+    private final StampCalculator stamper;
+    private final StagePlanner planner;
+    private final FileStager stager;
+
+    CrashRecovery(Config config, StampStore store, StampCalculator stamper, StagePlanner planner, FileStager stager) {
+        this.config = config;
+        this.store = store;
+        this.stamper = stamper;
+        this.planner = planner;
+        this.stager = stager;
+    }
+
+    /** Cleans up and returns the interrupted files, to be queued before anything the scan finds. */
+    Result run() throws Exception {
+        deleteLocalPartials();
+
+        Map<String, FileStamp> running = store.loadRunning();
+        if (running.isEmpty()) return Result.NONE;
+        logger.info("[RECOVER] {} job(s) were cut short by the last run", running.size());
+
+        Path root = config.inputRoot().toAbsolutePath().normalize();
+        List<ScannedFile> requeue = new ArrayList<>();
+        List<Path> kept = new ArrayList<>();
+
+        for (Map.Entry<String, FileStamp> e : running.entrySet()) {
+            Path absolute = Path.of(e.getKey());
+            FileStamp started = e.getValue();
+            if (!absolute.startsWith(root)) {
+                store.markFailed(e.getKey(), "Interrupted; no longer under the input root", gone(started));
+                continue;
+            }
+
+            // The same path form the scanner produces, which is what the stamp was taken over
+            Path source = config.inputRoot().resolve(root.relativize(absolute));
+            StagePlanner.StagePaths paths = planner.plan(source);
+            stager.cleanup(paths.remoteTmpOut(), SegmentedCopier.sidecarOf(paths.remoteTmpOut()));
+            deleteRecursively(segmentsDirOf(paths.remoteTmpOut()));
+
+            ScannedFile current = stat(source);
+            if (current == null) {
+                stager.cleanup(paths.localInput(), SegmentedCopier.sidecarOf(paths.localInput()), paths.localFinalOutput());
+                store.markFailed(e.getKey(), "Interrupted; the source no longer exists", gone(started));
+                continue;
+            }
+
+            if (config.downloadFromRemote() && keepStagedInput(source, paths.localInput(), started, current)) {
+                kept.add(paths.localInput());
+            }
+            requeue.add(current);
+        }
+
+        logger.info("[RECOVER] Requeued {} interrupted job(s), {} with their staged input kept", requeue.size(),
+                kept.size());
+        return new Result(requeue, kept);
+    }
+
+    private boolean keepStagedInput(Path source, Path staged, FileStamp started, ScannedFile current) throws Exception {
+        if (!Files.exists(staged)) return false;
+
+        Path sidecar = SegmentedCopier.sidecarOf(staged);
+        boolean unchanged = current.size() == started.size() && current.mtimeMs() == started.mtimeMs();
+        if (unchanged && Files.exists(sidecar)) {
+            logger.info("[RECOVER] Resuming the partial download of {}", source);
+            return true;
+        }
+        if (unchanged && stamper.isCopyOf(staged, source, started)) {
+            logger.info("[RECOVER] Reusing the staged copy of {}", source);
+            return true;
+        }
+
+        logger.info("[RECOVER] Staged copy of {} no longer matches the source", source);
+        stager.cleanup(staged, sidecar);
+        return false;
+    }
+
+    /** Deletes {@code tmp_*} outputs and segment work directories anywhere in the local output stage. */
+    private void deleteLocalPartials() throws IOException {
+        Path out = planner.stagedOutputRoot();
+        if (!Files.isDirectory(out)) return;
+
+        List<Path> orphans;
+        try (Stream<Path> walk = Files.walk(out)) {
+            orphans = walk.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith("tmp_") || (name.endsWith(".segments") && Files.isDirectory(p));
+            }).toList();
+        }
+        if (orphans.isEmpty()) return;
+
+        logger.info("[RECOVER] Deleting {} partial output(s) under {}", orphans.size(), out);
+        for (Path p : orphans) deleteRecursively(p);
+    }
+
+    private static Path segmentsDirOf(Path outputTmp) {
+        return outputTmp.resolveSibling(outputTmp.getFileName() + ".segments");
+    }
+
+    private void deleteRecursively(Path p) {
+        if (!Files.exists(p)) return;
+        try (Stream<Path> walk = Files.walk(p)) {
+            for (Path q : walk.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(q);
+        } catch (IOException e) {
+            logger.error("[CLEANUP] {}\n{}", p, e.getMessage());
+        }
+    }
+
+    /** A source that is gone can't be retried; if it reappears it has a new stamp and starts over. */
+    private static FailureRecord gone(FileStamp started) {
+        return new FailureRecord(started, FailureKind.UNKNOWN, 1, 0);
+    }
+
+    private static ScannedFile stat(Path source) {
+        try {
+            BasicFileAttributes a = Files.readAttributes(source, BasicFileAttributes.class);
+            if (!a.isRegularFile()) return null;
+            Object key = a.fileKey();
+            return new ScannedFile(source, a.size(), a.lastModifiedTime().toMillis(), key == null ? null : key.toString());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /** Files to queue first, and the staged inputs kept for them. */
+    record Result(List<ScannedFile> requeue, List<Path> keptInputs) {
+        static final Result NONE = new Result(List.of(), List.of());
+    }
+}
@@ -0,0 +1,181 @@
+package com.mogrul.videocompressor.service;
+
+import com.mogrul.videocompressor.inter.StageExecutor;
+import com.mogrul.videocompressor.metrics.MetricsRegistry;
+import com.mogrul.videocompressor.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.mogrul.videocompressor.metrics.MetricsRegistry.*;
+
+/**
+ * Resizes the encode pool between a lower and upper bound while the pipeline runs.
+ * <p>
+ * It is a hill climb on total encode speed (the sum of ffmpeg's {@code speed=} over running encodes, i.e. seconds
+ * of video per second). An encoder is added only while files are waiting, every encoder is busy and the CPU has
+ * headroom. A step is kept if total speed rose by at least {@link #MIN_GAIN}. Otherwise it is undone and the
+ * controller holds for a while. An extra encoder that slows transfers to and from the stage disk by more than a
+ * third is undone as well, since it only moves the bottleneck. When the run queue is well past the core count,
+ * an encoder is removed, and it comes back if that lowered total speed.
+ */
+final class EncodeConcurrencyController implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(EncodeConcurrencyController.class);
+    private static final long INTERVAL_SECONDS = 20;
+    // Progress older than this belongs to an encode that stalled or is about to finish
+    private static final long FRESH_PROGRESS_MS = 60_000;
+    private static final double HEADROOM_CPU = 0.80;
+    private static final double OVERLOAD_PER_CORE = 2.0;
+    private static final double MIN_GAIN = 0.05;
+    private static final double MAX_TRANSFER_LOSS = 1.0 / 3;
+    private static final int HOLD_TICKS = 6;
+
+    private final StageExecutor encodePool;
+    private final StageExecutor downloadPool;
+    private final MetricsRegistry metrics;
+    private final int min;
+    private final int max;
+    private final int cores = Runtime.getRuntime().availableProcessors();
+    private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("EncodeController"));
+
+    private volatile int target;
+    private volatile double lastCpu;
+    private volatile double lastSpeed;
+    private long lastTransferBytes;
+    private long lastTickNanos;
+    private Step step;
+    private int hold;
+
+    EncodeConcurrencyController(StageExecutor encodePool, StageExecutor downloadPool, MetricsRegistry metrics,
+                                int min, int max) {
+        this.encodePool = encodePool;
+        this.downloadPool = downloadPool;
+        this.metrics = metrics;
+        this.min = Math.max(1, min);
+        this.max = Math.max(this.min, max);
+        this.target = Math.clamp(encodePool.workers(), this.min, this.max);
+    }
+
+    void start() {
+        if (target != encodePool.workers()) encodePool.resize(target);
+
+        metrics.gauge("videocompressor_encode_workers_target", "Encode workers chosen by the adaptive controller.", "",
+                () -> target);
+        metrics.gauge("videocompressor_encode_speed_total", "Sum of ffmpeg speed (x realtime) over running encodes.", "",
+                () -> lastSpeed);
+        metrics.gauge("videocompressor_cpu_load", "System CPU load seen by the adaptive controller, 0 to 1.", "",
+                () -> lastCpu);
+
+        lastTransferBytes = transferBytes();
+        lastTickNanos = System.nanoTime();
+        scheduler.scheduleWithFixedDelay(this::tick, INTERVAL_SECONDS, INTERVAL_SECONDS, TimeUnit.SECONDS);
+        logger.info("[ADAPT] Encode workers start at {} (bounds {}..{})", target, min, max);
+    }
+
+    private void tick() {
+        try {
+            long now = System.nanoTime();
+            long bytes = transferBytes();
+            double transfer = (bytes - lastTransferBytes) / ((now - lastTickNanos) / 1e9);
+            lastTransferBytes = bytes;
+            lastTickNanos = now;
+
+            double cpu = cpuLoad();
+            double loadPerCore = os.getSystemLoadAverage() / cores;
+            double speed = totalSpeed();
+            lastCpu = cpu;
+            lastSpeed = speed;
+            String signals = String.format(Locale.ROOT, "cpu %.0f%%, load %.1f/core, speed %.2fx, transfer %.1f MB/s, %d queued",
+                    cpu * 100, loadPerCore, speed, transfer / (1024 * 1024), encodePool.queued());
+
+            if (step != null) {
+                judge(step, speed, transfer, signals);
+                step = null;
+                return;
+            }
+            if (hold > 0) {
+                hold--;
+                return;
+            }
+
+            boolean waiting = encodePool.queued() > 0 && encodePool.active() >= target;
+            if (waiting && cpu < HEADROOM_CPU && target < max) {
+                apply(target + 1, "files waiting and CPU has headroom", signals);
+                step = new Step(+1, speed, transfer, downloadPool.active() > 0);
+            } else if (loadPerCore > OVERLOAD_PER_CORE && target > min) {
+                apply(target - 1, "run queue well past the core count", signals);
+                step = new Step(-1, speed, transfer, downloadPool.active() > 0);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("[ADAPT] Skipped a step :: {}", e.getMessage());
+        }
+    }
+
+    /** Keeps or undoes the previous step depending on what it did to throughput. */
+    private void judge(Step s, double speed, double transfer, String signals) {
+        if (s.direction > 0) {
+            boolean gained = speed >= s.speedBefore * (1 + MIN_GAIN);
+            boolean starvedTransfers = s.transfersActive && transfer < s.transferBefore * (1 - MAX_TRANSFER_LOSS);
+            if (gained && !starvedTransfers) {
+                logger.info("[ADAPT] Keeping {} encode workers ({})", target, signals);
+                return;
+            }
+            apply(target - 1, starvedTransfers ? "extra encoder slowed transfers" : "extra encoder added no speed",
+                    signals);
+        } else {
+            if (speed >= s.speedBefore * (1 - MIN_GAIN)) {
+                logger.info("[ADAPT] Keeping {} encode workers ({})", target, signals);
+                return;
+            }
+            apply(target + 1, "fewer encoders lowered speed", signals);
+        }
+        hold = HOLD_TICKS;
+    }
+
+    private void apply(int workers, String reason, String signals) {
+        workers = Math.clamp(workers, min, max);
+        if (workers == target) return;
+
+        metrics.add(ENCODE_RESIZES, label("direction", workers > target ? "up" : "down"), 1);
+        logger.info("[ADAPT] Encode workers {} -> {}: {} ({})", target, workers, reason, signals);
+        target = workers;
+        encodePool.resize(workers);
+    }
+
+    private double totalSpeed() {
+        long now = System.currentTimeMillis();
+        return metrics.activeEncodes().values().stream()
+                .filter(e -> e.last() != null && now - e.lastUpdateMs() < FRESH_PROGRESS_MS)
+                .mapToDouble(e -> e.last().speed())
+                .sum();
+    }
+
+    private long transferBytes() {
+        return metrics.count(BYTES_DOWNLOADED) + metrics.count(BYTES_UPLOADED);
+    }
+
+    /** Whole-system CPU use from 0 to 1, estimated from the load average where the JVM doesn't report it. */
+    private double cpuLoad() {
+        if (os instanceof com.sun.management.OperatingSystemMXBean sun) {
+            double load = sun.getCpuLoad();
+            if (load >= 0) return load;
+        }
+        double avg = os.getSystemLoadAverage();
+        return avg < 0 ? 0 : Math.min(1.0, avg / cores);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private record Step(int direction, double speedBefore, double transferBefore, boolean transfersActive) {}
+}
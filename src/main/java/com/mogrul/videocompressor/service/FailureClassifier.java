@@ -0,0 +1,78 @@
+package com.mogrul.videocompressor.service;
+
+import com.mogrul.videocompressor.enu.FailureKind;
+import com.mogrul.videocompressor.ffmpeg.FfmpegTranscoder;
+import com.mogrul.videocompressor.ffmpeg.Ffprobe;
+
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.NoSuchFileException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Sorts a stage failure into a {@link FailureKind} from its exception type and, for ffmpeg and ffprobe, the error
+ * lines they printed. The whole cause chain is looked at, since stage errors often arrive wrapped.
+ */
+final class FailureClassifier {
+    private static final List<String> OUT_OF_DISK = List.of(
+            "no space left on device", "not enough space on the disk", "disk quota exceeded", "disk full"
+    );
+    private static final List<String> TRANSIENT_IO = List.of(
+            "input/output error", "connection reset", "connection refused", "connection timed out",
+            "broken pipe", "stale file handle", "host is down", "network is unreachable", "resource temporarily unavailable",
+            "the specified network name is no longer available", "file shrank"
+    );
+    // What ffmpeg prints for a source it can't decode
+    private static final List<String> CORRUPT_INPUT = List.of(
+            "invalid data found when processing input", "moov atom not found", "error while decoding",
+            "invalid nal unit", "corrupt", "truncated", "ebml header parsing failed", "could not find codec parameters"
+    );
+    private static final List<String> INACCESSIBLE = List.of("no such file or directory", "permission denied");
+
+    private FailureClassifier() {}
+
+    static FailureKind classify(Throwable failure) {
+        FailureKind kind = FailureKind.UNKNOWN;
+        for (Throwable t = failure; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            // Out of disk wins over whatever error it caused further up
+            String text = text(t);
+            if (containsAny(text, OUT_OF_DISK)) return FailureKind.OUT_OF_DISK;
+            if (kind == FailureKind.UNKNOWN) kind = kindOf(t, text);
+        }
+        return kind;
+    }
+
+    private static FailureKind kindOf(Throwable t, String text) {
+        if (t instanceof Ffprobe.ValidationException) return FailureKind.VALIDATION;
+        if (t instanceof FfmpegTranscoder.FfmpegException) {
+            // An I/O error means ffmpeg lost the share, not that the input is bad
+            if (containsAny(text, TRANSIENT_IO)) return FailureKind.TRANSIENT_IO;
+            if (containsAny(text, CORRUPT_INPUT)) return FailureKind.CORRUPT_INPUT;
+            if (containsAny(text, INACCESSIBLE)) return FailureKind.INACCESSIBLE;
+            return FailureKind.UNKNOWN;
+        }
+        if (t instanceof Ffprobe.ProbeException) {
+            // Same rules as ffmpeg, on ffprobe's stderr; a failure it doesn't explain is not proof of a broken file
+            if (containsAny(text, TRANSIENT_IO)) return FailureKind.TRANSIENT_IO;
+            if (containsAny(text, CORRUPT_INPUT)) return FailureKind.CORRUPT_INPUT;
+            if (containsAny(text, INACCESSIBLE)) return FailureKind.INACCESSIBLE;
+            return FailureKind.UNKNOWN;
+        }
+        if (t instanceof NoSuchFileException || t instanceof AccessDeniedException) return FailureKind.INACCESSIBLE;
+        if (t instanceof IOException) return FailureKind.TRANSIENT_IO;
+        return FailureKind.UNKNOWN;
+    }
+
+    private static String text(Throwable t) {
+        String text = t instanceof FfmpegTranscoder.FfmpegException f ? f.outputTail() : t.getMessage();
+        return text == null ? "" : text.toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean containsAny(String text, List<String> markers) {
+        for (String m : markers) {
+            if (text.contains(m)) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,67 @@
+package com.mogrul.videocompressor.service;
+
+import com.mogrul.videocompressor.enu.FailureKind;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * When a failed stage is tried again.
+ * <p>
+ * Within a run only the stage that failed is repeated, after an exponential backoff: I/O and disk-space errors
+ * up to {@code maxRetries} times, validation and unrecognised errors once, corrupt input and missing or
+ * unreadable files never. A file that still fails is recorded with a next-attempt time, so later runs back off
+ * too: a transient error is retried on the next run, then at growing intervals, while corrupt input and repeated
+ * validation failures wait until the file changes (or a month has passed, in case the classification was wrong).
+ */
+final class RetryPolicy {
+    private static final long MAX_BACKOFF_MS = Duration.ofMinutes(10).toMillis();
+    // Disk space comes back as other jobs upload and release their staged files, which takes a while
+    private static final int OUT_OF_DISK_FACTOR = 4;
+    private static final double JITTER = 0.2;
+
+    private static final long RUN_BACKOFF_MS = Duration.ofHours(6).toMillis();
+    private static final long PERMANENT_MS = Duration.ofDays(30).toMillis();
+
+    private final int maxRetries;
+    private final long baseBackoffMs;
+
+    RetryPolicy(int maxRetries, long baseBackoffMs) {
+        this.maxRetries = Math.max(0, maxRetries);
+        this.baseBackoffMs = Math.max(0, baseBackoffMs);
+    }
+
+    /**
+     * Delay before the failed stage runs again, or -1 to give up.
+     *
+     * @param retries retries this job has already had in this run
+     */
+    long retryDelayMs(FailureKind kind, int retries) {
+        int allowed = switch (kind) {
+            case TRANSIENT_IO, OUT_OF_DISK -> maxRetries;
+            case VALIDATION, UNKNOWN -> Math.min(1, maxRetries);
+            case CORRUPT_INPUT, INACCESSIBLE -> 0;
+        };
+        if (retries >= allowed) return -1;
+
+        long base = kind == FailureKind.OUT_OF_DISK ? baseBackoffMs * OUT_OF_DISK_FACTOR : baseBackoffMs;
+        long delay = Math.min(MAX_BACKOFF_MS, base << Math.min(retries, 20));
+        // Jitter keeps jobs that failed together from all hitting the share again at the same moment
+        double jitter = 1 + ThreadLocalRandom.current().nextDouble(-JITTER, JITTER);
+        return (long) (delay * jitter);
+    }
+
+    /**
+     * Earliest time a later run may try the file again.
+     *
+     * @param attempts runs in a row the file has now failed in, this one included
+     */
+    long nextAttemptAtMs(FailureKind kind, int attempts, long nowMs) {
+        boolean permanent = kind == FailureKind.CORRUPT_INPUT || (kind == FailureKind.VALIDATION && attempts >= 2);
+        if (permanent) return nowMs + PERMANENT_MS;
+        if (attempts <= 1) return nowMs;
+
+        long backoff = RUN_BACKOFF_MS << Math.min(attempts - 2, 20);
+        return nowMs + Math.min(PERMANENT_MS, backoff);
+    }
+}
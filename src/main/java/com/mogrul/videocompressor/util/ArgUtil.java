@@ -107,6 +107,27 @@ public final class ArgUtil {
                 .orElseThrow(() -> new IllegalArgumentException("Missing required int arg: --" + key));
     }
 
+    public static Optional<Double> getDouble(String key) {
+        return getString(key).map(v -> {
+            try {
+                return Double.parseDouble(v);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid number for --" + key + ": " + v);
+            }
+        });
+    }
+
+    /** Reads a byte size such as "200G" (see {@link SizeFormatUtil#parseBytes(String)}). */
+    public static Optional<Long> getBytes(String key) {
+        return getString(key).map(v -> {
+            try {
+                return SizeFormatUtil.parseBytes(v);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid size for --" + key + ": " + v);
+            }
+        });
+    }
+
     public static Optional<Boolean> getBoolean(String key) {
         return getString(key).map(v -> {
             String s = v.trim().toLowerCase(Locale.ROOT);
@@ -186,6 +207,14 @@ public final class ArgUtil {
         return getInt(key).orElse(def);
     }
 
+    public static double getDoubleOrDefault(String key, double def) {
+        return getDouble(key).orElse(def);
+    }
+
+    public static long getBytesOrDefault(String key, long def) {
+        return getBytes(key).orElse(def);
+    }
+
     public static boolean getBooleanOrDefault(String key, boolean def) {
         return getBoolean(key).orElse(def);
     }
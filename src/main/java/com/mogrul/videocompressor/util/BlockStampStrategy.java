@@ -0,0 +1,142 @@
+package com.mogrul.videocompressor.util;
+
+import com.mogrul.videocompressor.enu.StampAlgorithm;
+import com.mogrul.videocompressor.inter.StampStrategy;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Fingerprints a file from a few fixed size blocks read with positional reads.
+ * <p>
+ * {@code sha256-head} reads only the first block and matches the original stamp byte for byte. The sampled
+ * algorithms also read evenly spaced middle blocks and the last block, so appended or patched recordings
+ * change the stamp, and hash the whole file when it is no bigger than the samples.
+ */
+public final class BlockStampStrategy implements StampStrategy {
+    private static final int MIDDLE_BLOCKS = 3;
+
+    private final StampAlgorithm algorithm;
+    private final int blockBytes;
+
+    // Buffers and hash state borrowed per call. Not thread-local: with a virtual thread per job that would
+    // allocate a fresh direct buffer for every file
+    private final Queue<Scratch> scratch = new ConcurrentLinkedQueue<>();
+
+    public BlockStampStrategy(StampAlgorithm algorithm, int blockBytes) {
+        if (blockBytes <= 0) throw new IllegalArgumentException("blockBytes must be > 0");
+        this.algorithm = algorithm;
+        this.blockBytes = blockBytes;
+    }
+
+    @Override
+    public String algorithm() {
+        return algorithm.id();
+    }
+
+    @Override
+    public String fingerprint(Path file, FileChannel channel, long size) throws IOException {
+        Scratch s = scratch.poll();
+        if (s == null) s = new Scratch(blockBytes);
+        try {
+            return fingerprint(s, file, channel, size);
+        } finally {
+            scratch.offer(s);
+        }
+    }
+
+    private String fingerprint(Scratch s, Path file, FileChannel channel, long size) throws IOException {
+        s.reset();
+
+        // include some metadata to reduce collisions across identical headers
+        s.update(file.toString().getBytes(StandardCharsets.UTF_8));
+        s.update(size);
+
+        if (algorithm == StampAlgorithm.SHA256_HEAD) {
+            s.updateFrom(channel, 0, Math.min(blockBytes, size), false);
+        } else if (size <= (long) blockBytes * (MIDDLE_BLOCKS + 2)) {
+            s.updateFrom(channel, 0, size, true);
+        } else {
+            s.updateFrom(channel, 0, blockBytes, true);
+            for (int i = 1; i <= MIDDLE_BLOCKS; i++) {
+                s.updateFrom(channel, size / (MIDDLE_BLOCKS + 1) * i, blockBytes, true);
+            }
+            s.updateFrom(channel, size - blockBytes, blockBytes, true);
+        }
+
+        return s.finish();
+    }
+
+    private final class Scratch {
+        private final ByteBuffer buf;
+        private final ByteBuffer longBytes = ByteBuffer.allocate(Long.BYTES);
+        private final MessageDigest sha256;
+        private final XxHash64 xxh64;
+
+        Scratch(int blockBytes) {
+            this.buf = ByteBuffer.allocateDirect(Math.min(blockBytes, 1024 * 1024));
+            if (algorithm == StampAlgorithm.XXH64_SAMPLED) {
+                this.sha256 = null;
+                this.xxh64 = new XxHash64();
+            } else {
+                try {
+                    this.sha256 = MessageDigest.getInstance("SHA-256");
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IllegalStateException(e);
+                }
+                this.xxh64 = null;
+            }
+        }
+
+        void reset() {
+            if (sha256 != null) sha256.reset(); else xxh64.reset();
+        }
+
+        void update(byte[] bytes) {
+            if (sha256 != null) sha256.update(bytes); else xxh64.update(bytes);
+        }
+
+        void update(long value) {
+            longBytes.clear();
+            longBytes.putLong(value).flip();
+            update(longBytes);
+        }
+
+        void update(ByteBuffer b) {
+            if (sha256 != null) sha256.update(b); else xxh64.update(b);
+        }
+
+        /**
+         * Hashes {@code length} bytes from {@code offset}. The original head stamp tolerated a file shrinking
+         * under it, so only the sampled algorithms insist on reading every byte.
+         */
+        void updateFrom(FileChannel channel, long offset, long length, boolean exact) throws IOException {
+            long pos = offset;
+            long end = offset + length;
+            while (pos < end) {
+                buf.clear();
+                buf.limit((int) Math.min(buf.capacity(), end - pos));
+                int read = channel.read(buf, pos);
+                if (read < 0) {
+                    if (exact) throw new EOFException("File shrank while stamping at " + pos + " bytes");
+                    return;
+                }
+                buf.flip();
+                update(buf);
+                pos += read;
+            }
+        }
+
+        String finish() {
+            return sha256 != null ? HexFormatter.hex(sha256.digest()) : HexFormatter.hex(xxh64.digest());
+        }
+    }
+}
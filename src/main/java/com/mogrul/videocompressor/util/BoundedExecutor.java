@@ -0,0 +1,150 @@
+package com.mogrul.videocompressor.util;
+
+import com.mogrul.videocompressor.inter.StageExecutor;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed size worker pool with a bounded work queue.
+ * {@link #submit(Runnable)} blocks the caller once every worker is busy and the queue is full,
+ * so a producer can never run further ahead than {@code workers + queueCapacity} tasks.
+ * A prioritised pool starts queued tasks lowest rank first instead of in submission order.
+ */
+public final class BoundedExecutor implements StageExecutor {
+    private final ThreadPoolExecutor pool;
+    private final Slots slots;
+    private final AtomicLong sequence = new AtomicLong();
+
+    public BoundedExecutor(String poolName, int workers, int queueCapacity) {
+        this(poolName, workers, queueCapacity, false);
+    }
+
+    public BoundedExecutor(String poolName, int workers, int queueCapacity, boolean prioritised) {
+        if (workers <= 0) throw new IllegalArgumentException("workers must be > 0");
+        if (queueCapacity <= 0) throw new IllegalArgumentException("queueCapacity must be > 0");
+
+        // The semaphore does the bounding. The queues themselves are unbounded: a task gives its slot back just
+        // before its worker is free again, so the next submit can find every worker busy and the queue at capacity
+        BlockingQueue<Runnable> queue = prioritised
+                ? new PriorityBlockingQueue<>(queueCapacity, (a, b) -> ((Task) a).compareTo((Task) b))
+                : new LinkedBlockingQueue<>();
+        this.pool = new ThreadPoolExecutor(
+                workers, workers,
+                0L, TimeUnit.MILLISECONDS,
+                queue,
+                new NamedThreadFactory(poolName)
+        );
+        this.slots = new Slots(workers + queueCapacity);
+    }
+
+    @Override
+    public void submit(Runnable task, long rank) throws InterruptedException {
+        slots.acquire();
+        try {
+            pool.execute(new Task(task, rank, sequence.getAndIncrement()));
+        } catch (RuntimeException e) {
+            slots.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean trySubmit(Runnable task) {
+        if (!slots.tryAcquire()) return false;
+        try {
+            pool.execute(new Task(task, Long.MIN_VALUE, sequence.getAndIncrement()));
+            return true;
+        } catch (RuntimeException e) {
+            slots.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public int idle() {
+        return Math.max(0, pool.getMaximumPoolSize() - pool.getActiveCount() - pool.getQueue().size());
+    }
+
+    @Override
+    public int workers() {
+        return pool.getMaximumPoolSize();
+    }
+
+    /**
+     * Growing starts new workers for anything queued; shrinking lets running tasks finish, and new tasks wait
+     * until the pool is below the new size.
+     */
+    @Override
+    public synchronized void resize(int workers) {
+        if (workers <= 0) throw new IllegalArgumentException("workers must be > 0");
+        int delta = workers - pool.getMaximumPoolSize();
+        if (delta > 0) {
+            pool.setMaximumPoolSize(workers);
+            pool.setCorePoolSize(workers);
+            slots.release(delta);
+        } else if (delta < 0) {
+            slots.reduce(-delta);
+            pool.setCorePoolSize(workers);
+            pool.setMaximumPoolSize(workers);
+        }
+    }
+
+    @Override
+    public int queued() {
+        return pool.getQueue().size();
+    }
+
+    @Override
+    public int active() {
+        return pool.getActiveCount();
+    }
+
+    @Override
+    public void shutdownAndAwait() throws InterruptedException {
+        pool.shutdown();
+        pool.awaitTermination(365, TimeUnit.DAYS);
+    }
+
+    private static final class Slots extends Semaphore {
+        Slots(int permits) {
+            super(permits);
+        }
+
+        void reduce(int permits) {
+            reducePermits(permits);
+        }
+    }
+
+    private final class Task implements Runnable, Comparable<Task> {
+        private final Runnable task;
+        private final long rank;
+        private final long sequence;
+
+        Task(Runnable task, long rank, long sequence) {
+            this.task = task;
+            this.rank = rank;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } finally {
+                slots.release();
+            }
+        }
+
+        @Override
+        public int compareTo(Task o) {
+            int c = Long.compare(rank, o.rank);
+            return c != 0 ? c : Long.compare(sequence, o.sequence);
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package com.mogrul.videocompressor.util;
 
+import com.mogrul.videocompressor.enu.CopyMode;
+import com.mogrul.videocompressor.enu.SchedulePolicy;
+import com.mogrul.videocompressor.enu.StampAlgorithm;
 import com.mogrul.videocompressor.record.Argument;
 import com.mogrul.videocompressor.record.ArgumentList;
 import com.mogrul.videocompressor.record.Config;
@@ -44,15 +47,76 @@ public class ConfigUtil {
 
         int fps = ArgUtil.getIntOrDefault(ArgumentList.targetFps.name(), DefaultArguments.fps);
         int workers = ArgUtil.getIntOrDefault(ArgumentList.workers.name(), DefaultArguments.workers);
+        int downloadWorkers = ArgUtil.getIntOrDefault(ArgumentList.downloadWorkers.name(), DefaultArguments.downloadWorkers);
+        int encodeWorkers = ArgUtil.getIntOrDefault(ArgumentList.encodeWorkers.name(), workers);
+        int uploadWorkers = ArgUtil.getIntOrDefault(ArgumentList.uploadWorkers.name(), DefaultArguments.uploadWorkers);
+        int queueSize = ArgUtil.getIntOrDefault(ArgumentList.queueSize.name(), DefaultArguments.queueSize);
+        int prefetch = ArgUtil.getIntOrDefault(ArgumentList.prefetch.name(), DefaultArguments.prefetch);
+        long stageBudget = ArgUtil.getBytesOrDefault(ArgumentList.stageBudget.name(), DefaultArguments.stageBudget);
         int outputWidth = ArgUtil.getIntOrDefault(ArgumentList.outputWidth.name(), DefaultArguments.outputWidth);
         int outputHeight = ArgUtil.getIntOrDefault(ArgumentList.outputHeight.name(), DefaultArguments.outputHeight);
 
         boolean deleteSourceAfterSuccess = ArgUtil.getBooleanOrDefault(ArgumentList.deleteSource.name(), DefaultArguments.deleteSource);
         boolean downloadFromRemote = ArgUtil.getBooleanOrDefault(ArgumentList.downloadFromRemote.name(), DefaultArguments.downloadFromRemote);
 
+        int copyStreams = ArgUtil.getIntOrDefault(ArgumentList.copyStreams.name(), DefaultArguments.copyStreams);
+        long copyChunkSize = ArgUtil.getBytesOrDefault(ArgumentList.copyChunkSize.name(), DefaultArguments.copyChunkSize);
+        if (copyChunkSize <= 0 || copyChunkSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("--" + ArgumentList.copyChunkSize.name() + " must be between 1B and 2G");
+        }
+        CopyMode copyMode = ArgUtil.getString(ArgumentList.copyMode.name()).map(CopyMode::fromName).orElse(DefaultArguments.copyMode);
+        long maxDownloadRate = ArgUtil.getBytesOrDefault(ArgumentList.maxDownloadRate.name(), DefaultArguments.maxDownloadRate);
+        long maxUploadRate = ArgUtil.getBytesOrDefault(ArgumentList.maxUploadRate.name(), DefaultArguments.maxUploadRate);
+
+        boolean smartTranscode = ArgUtil.getBooleanOrDefault(ArgumentList.smartTranscode.name(), DefaultArguments.smartTranscode);
+        double maxBitsPerPixel = ArgUtil.getDoubleOrDefault(ArgumentList.maxBitsPerPixel.name(), DefaultArguments.maxBitsPerPixel);
+        boolean segmentEncode = ArgUtil.getBooleanOrDefault(ArgumentList.segmentEncode.name(), DefaultArguments.segmentEncode);
+        int segmentMinDuration = ArgUtil.getIntOrDefault(ArgumentList.segmentMinDuration.name(), DefaultArguments.segmentMinDuration);
+
+        int metricsPort = ArgUtil.getIntOrDefault(ArgumentList.metricsPort.name(), DefaultArguments.metricsPort);
+
+        StampAlgorithm stampAlgorithm = ArgUtil.getString(ArgumentList.stampAlgorithm.name()).map(StampAlgorithm::fromName).orElse(DefaultArguments.stampAlgorithm);
+
+        boolean paranoid = ArgUtil.getBooleanOrDefault(ArgumentList.paranoid.name(), DefaultArguments.paranoid);
+
+        long indexMemoryLimit = ArgUtil.getBytesOrDefault(ArgumentList.indexMemoryLimit.name(), DefaultArguments.indexMemoryLimit);
+
+        int scanThreads = ArgUtil.getIntOrDefault(ArgumentList.scanThreads.name(), DefaultArguments.scanThreads);
+
+        boolean fullRescan = ArgUtil.getBooleanOrDefault(ArgumentList.fullRescan.name(), DefaultArguments.fullRescan);
+
+        boolean watch = ArgUtil.getBooleanOrDefault(ArgumentList.watch.name(), DefaultArguments.watch);
+
+        int watchPollInterval = ArgUtil.getIntOrDefault(ArgumentList.watchPollInterval.name(), DefaultArguments.watchPollInterval);
+
+        int stableSeconds = ArgUtil.getIntOrDefault(ArgumentList.stableSeconds.name(), DefaultArguments.stableSeconds);
+
+        SchedulePolicy schedulePolicy = ArgUtil.getString(ArgumentList.schedulePolicy.name()).map(SchedulePolicy::fromName).orElse(DefaultArguments.schedulePolicy);
+
+        int scheduleWindow = ArgUtil.getIntOrDefault(ArgumentList.scheduleWindow.name(), DefaultArguments.scheduleWindow);
+
+        boolean adaptiveEncode = ArgUtil.getBooleanOrDefault(ArgumentList.adaptiveEncode.name(), DefaultArguments.adaptiveEncode);
+
+        int minEncodeWorkers = ArgUtil.getIntOrDefault(ArgumentList.minEncodeWorkers.name(), DefaultArguments.minEncodeWorkers);
+
+        int maxEncodeWorkers = ArgUtil.getIntOrDefault(ArgumentList.maxEncodeWorkers.name(), DefaultArguments.maxEncodeWorkers);
+
+        boolean virtualThreads = ArgUtil.getBooleanOrDefault(ArgumentList.virtualThreads.name(), DefaultArguments.virtualThreads);
+
+        int checkWorkers = ArgUtil.getIntOrDefault(ArgumentList.checkWorkers.name(), DefaultArguments.checkWorkers);
+
+        int retries = ArgUtil.getIntOrDefault(ArgumentList.retries.name(), DefaultArguments.retries);
+
+        int retryBackoff = ArgUtil.getIntOrDefault(ArgumentList.retryBackoff.name(), DefaultArguments.retryBackoff);
+
         return new Config(
-                inputRoot, outputRoot, localStage, ffmpegPath, ffprobePath, dbPath, fps, workers, outputHeight,
-                outputWidth, deleteSourceAfterSuccess, downloadFromRemote
+                inputRoot, outputRoot, localStage, ffmpegPath, ffprobePath, dbPath, fps, downloadWorkers, encodeWorkers,
+                uploadWorkers, queueSize, prefetch, stageBudget, outputHeight,
+                outputWidth, deleteSourceAfterSuccess, downloadFromRemote, copyStreams, (int) copyChunkSize,
+                copyMode, maxDownloadRate, maxUploadRate, smartTranscode, maxBitsPerPixel, segmentEncode,
+                segmentMinDuration, metricsPort, stampAlgorithm, paranoid, indexMemoryLimit, scanThreads, fullRescan,
+                watch, watchPollInterval, stableSeconds, schedulePolicy, scheduleWindow, adaptiveEncode,
+                minEncodeWorkers, maxEncodeWorkers, virtualThreads, checkWorkers, retries, retryBackoff
         );
     }
 }
@@ -0,0 +1,260 @@
+package com.mogrul.videocompressor.util;
+
+import com.mogrul.videocompressor.record.ScanDir;
+import com.mogrul.videocompressor.record.ScannedFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Feeds new and changed videos under a root to a running pipeline.
+ * <p>
+ * Local trees are watched with a {@link WatchService}. Network mounts don't deliver remote changes as events, so
+ * there the tree is polled instead, reusing the scanner's directory index so only directories whose mtime moved are
+ * listed. Event mode still polls now and then, as a safety net for lost events.
+ * <p>
+ * Nothing is handed over until its size and mtime have stayed the same for the stability window, so a recording
+ * that is still being written is left alone until it is finished.
+ */
+public final class DirectoryWatcher implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(DirectoryWatcher.class);
+
+    // File systems whose change notifications only cover local writes
+    private static final Set<String> REMOTE_FS_TYPES = Set.of(
+            "cifs", "smb", "smbfs", "smb2", "smb3", "nfs", "nfs4", "9p", "sshfs", "afpfs", "davfs", "webdav"
+    );
+    private static final int EVENT_MODE_POLL_FACTOR = 10;
+
+    private final Path root;
+    private final VideoFileScanner scanner;
+    private final long pollIntervalMs;
+    private final long stableMs;
+    private final Consumer<ScannedFile> onStableFile;
+
+    private final Map<Path, Pending> pending = new ConcurrentHashMap<>();
+    private final Map<WatchKey, Path> watchedDirs = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService ticker =
+            Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("Watcher"));
+    private final CountDownLatch closed = new CountDownLatch(1);
+
+    // Set to null by close() while the event loop and ticker may still be reading it
+    private volatile WatchService watchService;
+    private volatile Map<String, ScanDir> knownDirs = Map.of();
+
+    public DirectoryWatcher(Path root, VideoFileScanner scanner, long pollIntervalMs, long stableMs,
+                            Consumer<ScannedFile> onStableFile) {
+        this.root = root;
+        this.scanner = scanner;
+        this.pollIntervalMs = pollIntervalMs;
+        this.stableMs = stableMs;
+        this.onStableFile = onStableFile;
+    }
+
+    /** Registers for change events (when the file system supports them); call before the initial scan. */
+    public void start() {
+        if (isRemote(root)) return;
+
+        try {
+            watchService = root.getFileSystem().newWatchService();
+            registerTree(root);
+        } catch (IOException e) {
+            // e.g. out of inotify watches on a huge tree
+            logger.warn("[WATCH] Change events unavailable for {}, polling instead :: {}", root, e.getMessage());
+            closeWatchService();
+        }
+    }
+
+    /**
+     * Watches until {@link #close()}. {@code baseline} is what the initial scan saw, so the first poll only lists
+     * directories that changed since.
+     */
+    public void run(Collection<ScanDir> baseline) throws InterruptedException {
+        // Closed before it got going, e.g. a shutdown during the initial scan
+        if (closed.getCount() == 0) return;
+
+        // Failed files aren't retried by polling; every known directory counts as handled
+        knownDirs = baseline.stream().collect(Collectors.toMap(ScanDir::path, DirectoryWatcher::handled, (a, b) -> a));
+
+        long pollMs = watchService != null ? pollIntervalMs * EVENT_MODE_POLL_FACTOR : pollIntervalMs;
+        long tickMs = Math.max(1000, Math.min(5000, stableMs / 5));
+        ticker.scheduleWithFixedDelay(this::checkPending, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        ticker.scheduleWithFixedDelay(this::poll, pollMs, pollMs, TimeUnit.MILLISECONDS);
+
+        logger.info("[WATCH] Watching {} ({}, polling every {}s)",
+                root, watchService != null ? "change events" : "polling only", pollMs / 1000);
+
+        if (watchService == null) {
+            closed.await();
+        } else {
+            eventLoop();
+        }
+    }
+
+    /** Starts tracking a file that may still be written to. */
+    public void offer(ScannedFile file) {
+        pending.putIfAbsent(file.path(), new Pending(file.size(), file.mtimeMs(), System.currentTimeMillis()));
+    }
+
+    private void offer(Path file) {
+        try {
+            BasicFileAttributes a = Files.readAttributes(file, BasicFileAttributes.class);
+            if (a.isRegularFile()) {
+                pending.putIfAbsent(file, new Pending(a.size(), a.lastModifiedTime().toMillis(), System.currentTimeMillis()));
+            }
+        } catch (IOException e) {
+            // Deleted or renamed before we looked; a later event covers the new name
+        }
+    }
+
+    private void eventLoop() {
+        WatchService service = watchService;
+        while (service != null && closed.getCount() > 0) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            Path dir = watchedDirs.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW || dir == null) {
+                    ticker.execute(this::poll);
+                    continue;
+                }
+
+                Path child = dir.resolve((Path) event.context());
+                if (event.kind() == ENTRY_CREATE && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                    // Files can land in a new directory before it is registered, so it gets one scan of its own
+                    ticker.execute(() -> {
+                        try {
+                            registerTree(child);
+                            scanner.scan(child, this::offer);
+                        } catch (IOException e) {
+                            logger.warn("[WATCH] Could not watch new directory {} :: {}", child, e.getMessage());
+                        }
+                    });
+                } else if (event.kind() != ENTRY_DELETE && VideoFileScanner.isVideo(child)) {
+                    offer(child);
+                }
+            }
+
+            if (!key.reset()) watchedDirs.remove(key);
+        }
+    }
+
+    private void registerTree(Path start) throws IOException {
+        WatchService service = watchService;
+        if (service == null) return;
+
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                watchedDirs.put(dir.register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void poll() {
+        try {
+            Collection<ScanDir> seen = scanner.scan(root, knownDirs, this::offer);
+            knownDirs = seen.stream().collect(Collectors.toMap(ScanDir::path, DirectoryWatcher::handled, (a, b) -> a));
+        } catch (Exception e) {
+            logger.warn("[WATCH] Poll of {} failed :: {}", root, e.getMessage());
+        }
+    }
+
+    /** Hands over every pending file whose size and mtime haven't moved for the stability window. */
+    private void checkPending() {
+        long now = System.currentTimeMillis();
+
+        for (Map.Entry<Path, Pending> e : pending.entrySet()) {
+            Path file = e.getKey();
+            Pending last = e.getValue();
+
+            BasicFileAttributes a;
+            try {
+                a = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (IOException gone) {
+                pending.remove(file);
+                continue;
+            }
+
+            long size = a.size();
+            long mtime = a.lastModifiedTime().toMillis();
+            if (size != last.size || mtime != last.mtimeMs) {
+                pending.put(file, new Pending(size, mtime, now));
+                continue;
+            }
+
+            if (now - last.sinceMs >= stableMs) {
+                pending.remove(file);
+                Object key = a.fileKey();
+                try {
+                    onStableFile.accept(new ScannedFile(file, size, mtime, key == null ? null : key.toString()));
+                } catch (RuntimeException handOffError) {
+                    logger.error("[WATCH] Could not queue {} :: {}", file, handOffError.getMessage());
+                }
+            }
+        }
+    }
+
+    private static ScanDir handled(ScanDir d) {
+        return d.complete() ? d : new ScanDir(d.path(), d.parent(), d.mtimeMs(), d.entryCount(), d.videoCount(), true);
+    }
+
+    private static boolean isRemote(Path p) {
+        try {
+            String type = Files.getFileStore(p).type().toLowerCase(Locale.ROOT);
+            return REMOTE_FS_TYPES.contains(type) || type.startsWith("fuse");
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private void closeWatchService() {
+        WatchService service = watchService;
+        if (service == null) return;
+        watchService = null;
+        try {
+            service.close();
+        } catch (IOException ignored) {
+            // Nothing left to release
+        }
+    }
+
+    @Override
+    public void close() {
+        closed.countDown();
+        ticker.shutdownNow();
+        closeWatchService();
+    }
+
+    /** Size and mtime last seen, and since when they have been that way. */
+    private record Pending(long size, long mtimeMs, long sinceMs) {}
+}
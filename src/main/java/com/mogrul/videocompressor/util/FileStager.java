@@ -1,22 +1,33 @@
 package com.mogrul.videocompressor.util;
 
+import com.mogrul.videocompressor.enu.CopyMode;
+import com.mogrul.videocompressor.metrics.MetricsRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.nio.ByteBuffer;
-import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-import static java.nio.file.StandardOpenOption.*;
-
-public final class FileStager {
+public final class FileStager implements AutoCloseable {
     private final Logger logger = LoggerFactory.getLogger(FileStager.class);
+    private final ExecutorService streamPool;
+    private final SegmentedCopier copier;
+    private final RateLimiter downloadLimiter;
+    private final RateLimiter uploadLimiter;
+    private final MetricsRegistry metrics;
+
+    public FileStager(int copyStreams, int copyChunkSize, CopyMode copyMode, long maxDownloadRate, long maxUploadRate,
+                      MetricsRegistry metrics) {
+        this.streamPool = Executors.newCachedThreadPool(new NamedThreadFactory("FileStager"));
+        this.copier = new SegmentedCopier(copyStreams, copyChunkSize, copyMode, streamPool);
+        this.downloadLimiter = new RateLimiter(maxDownloadRate);
+        this.uploadLimiter = new RateLimiter(maxUploadRate);
+        this.metrics = metrics;
+    }
 
     public void download(Path remoteInput, Path localInput) throws Exception {
         logger.info("[DOWNLOADING] {}", remoteInput);
@@ -24,21 +35,20 @@ public final class FileStager {
         Files.createDirectories(localInput.getParent());
 
         long remoteSize = Files.size(remoteInput);
+        boolean partial = Files.exists(SegmentedCopier.sidecarOf(localInput));
         long localSize = Files.exists(localInput) ? Files.size(localInput) : 0L;
 
-        if (localSize == remoteSize && remoteSize > 0) {
+        if (!partial && localSize == remoteSize && remoteSize > 0) {
             logger.info("[SKIP] Already downloaded: {}", localInput);
             return;
         }
 
-        // If local is bigger or remote shrank/changed, start over.
-        if (localSize > remoteSize) {
-            logger.warn("[RESET] Local larger than remote, restarting download: {}", localInput);
-            Files.deleteIfExists(localInput);
-            localSize = 0L;
-        }
+        // Counted as each buffer lands rather than per file, so the encode controller sees a steady rate
+        long start = System.nanoTime();
+        long copied = copier.copy(remoteInput, localInput, downloadLimiter,
+                bytes -> metrics.add(MetricsRegistry.BYTES_DOWNLOADED, bytes));
 
-        copyFileResumable(remoteInput, localInput, localSize, remoteSize);
+        logger.info("[DOWNLOADED] {} ({})", localInput, throughput(copied, start));
     }
 
     public void uploadAtomic(Path localOutput, Path remoteTmp, Path remoteFinal) throws Exception {
@@ -46,11 +56,15 @@ public final class FileStager {
 
         Files.createDirectories(remoteFinal.getParent());
 
-        // copy to remote tmp first
-        copyFile(localOutput, remoteTmp);
+        // copy to remote tmp first (resumes if an earlier upload of the same output was interrupted)
+        long start = System.nanoTime();
+        long copied = copier.copy(localOutput, remoteTmp, uploadLimiter,
+                bytes -> metrics.add(MetricsRegistry.BYTES_UPLOADED, bytes));
 
         // then rename tmp -> final on the same remote filesystem (fast + atomic-ish)
         Files.move(remoteTmp, remoteFinal, StandardCopyOption.REPLACE_EXISTING);
+
+        logger.info("[UPLOADED] {} ({})", remoteFinal, throughput(copied, start));
     }
 
     public void cleanup(Path... paths) {
@@ -66,52 +80,14 @@ public final class FileStager {
         }
     }
 
-    private static void copyFile(Path src, Path dst) throws Exception {
-        // Replace existing to allow reruns
-        try (InputStream in = Files.newInputStream(src);
-             OutputStream out = Files.newOutputStream(dst, CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
-            in.transferTo(out);
-        }
+    private static String throughput(long bytes, long startNanos) {
+        double seconds = Math.max(1e-3, (System.nanoTime() - startNanos) / 1e9);
+        return SizeFormatUtil.humanBytes(bytes) + " in " + String.format(Locale.ROOT, "%.1f", seconds) + "s, "
+                + SizeFormatUtil.humanBytes((long) (bytes / seconds)) + "/s";
     }
 
-    private void copyFileResumable(Path src, Path dst, long startOffset, long expectedTotal) throws IOException {
-        // Open destination for append (create if missing)
-        try (SeekableByteChannel in = Files.newByteChannel(src, READ);
-             SeekableByteChannel out = Files.newByteChannel(dst, CREATE, WRITE)) {
-
-            // Seek to where we want to resume
-            if (startOffset > 0) {
-                logger.info("[RESUME] {} ({} / {})",
-                        dst.getFileName(),
-                        SizeFormatUtil.humanBytes(startOffset),
-                        SizeFormatUtil.humanBytes(expectedTotal)
-                );
-                in.position(startOffset);
-                out.position(startOffset); // overwrite/continue exactly at the offset
-            } else {
-                out.truncate(0); // fresh download
-            }
-
-            ByteBuffer buf = ByteBuffer.allocateDirect(1024 * 1024 * 4); // 4 MiB buffer
-
-            while (true) {
-                buf.clear();
-                int read = in.read(buf);
-                if (read < 0) break;
-
-                buf.flip();
-                while (buf.hasRemaining()) {
-                    out.write(buf);
-                }
-            }
-        }
-
-        // Verify size at the end (important for resume correctness)
-        long finalSize = Files.size(dst);
-        if (expectedTotal > 0 && finalSize != expectedTotal) {
-            throw new IOException("Resume download incomplete: " + dst + " is " + finalSize + " bytes, expected " + expectedTotal);
-        }
-
-        logger.info("[DOWNLOADED] {}", dst);
+    @Override
+    public void close() {
+        streamPool.shutdown();
     }
 }
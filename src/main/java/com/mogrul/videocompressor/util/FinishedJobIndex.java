@@ -0,0 +1,110 @@
+package com.mogrul.videocompressor.util;
+
+import com.mogrul.videocompressor.record.FileStamp;
+
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory copy of every finished (DONE/SKIPPED) job, so skip checks need no database round trip.
+ * <p>
+ * Paths are split into directory and file name: each directory string is stored once and owns a small map of
+ * its file names, and fingerprints are kept as raw bytes instead of hex. {@link #estimatedBytes()} is a running
+ * estimate of the heap this takes (object headers and references on a 64-bit JVM with compressed oops).
+ */
+public final class FinishedJobIndex {
+    private static final HexFormat HEX = HexFormat.of();
+
+    // Rough per-object costs used for the running estimate
+    private static final int STRING_BYTES = 40;
+    private static final int MAP_NODE_BYTES = 40;
+    private static final int ENTRY_BYTES = 40;
+    private static final int ARRAY_BYTES = 16;
+    private static final int DIR_BYTES = 96;
+
+    private final Map<String, Map<String, Entry>> dirs = new ConcurrentHashMap<>();
+    // Every row names one of a handful of stamp algorithms; keep one copy of each
+    private final Map<String, String> algorithms = new ConcurrentHashMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong entries = new AtomicLong();
+
+    /** The finished stamp recorded for {@code sourcePath}, or null if it hasn't finished. */
+    public FileStamp get(String sourcePath) {
+        int cut = lastSeparator(sourcePath);
+        Map<String, Entry> files = dirs.get(sourcePath.substring(0, cut + 1));
+        if (files == null) return null;
+
+        Entry e;
+        synchronized (files) {
+            e = files.get(sourcePath.substring(cut + 1));
+        }
+        return e == null ? null : new FileStamp(e.size, e.mtimeMs, e.fileKey, HEX.formatHex(e.hash), e.algorithm);
+    }
+
+    public void put(String sourcePath, FileStamp stamp) {
+        int cut = lastSeparator(sourcePath);
+        String dir = sourcePath.substring(0, cut + 1);
+        String name = sourcePath.substring(cut + 1);
+
+        Map<String, Entry> files = dirs.computeIfAbsent(dir, d -> {
+            bytes.addAndGet(DIR_BYTES + STRING_BYTES + d.length());
+            return new HashMap<>(4);
+        });
+
+        Entry e = new Entry(
+                stamp.size(),
+                stamp.mtimeMs(),
+                HEX.parseHex(stamp.partialHash()),
+                algorithms.computeIfAbsent(stamp.algorithm(), a -> a),
+                stamp.fileKey()
+        );
+
+        Entry old;
+        synchronized (files) {
+            old = files.put(name, e);
+        }
+        if (old == null) {
+            entries.incrementAndGet();
+            bytes.addAndGet(MAP_NODE_BYTES + STRING_BYTES + name.length() + e.bytes());
+        } else {
+            bytes.addAndGet(e.bytes() - old.bytes());
+        }
+    }
+
+    public void remove(String sourcePath) {
+        int cut = lastSeparator(sourcePath);
+        Map<String, Entry> files = dirs.get(sourcePath.substring(0, cut + 1));
+        if (files == null) return;
+
+        String name = sourcePath.substring(cut + 1);
+        Entry old;
+        synchronized (files) {
+            old = files.remove(name);
+        }
+        if (old != null) {
+            entries.decrementAndGet();
+            bytes.addAndGet(-(MAP_NODE_BYTES + STRING_BYTES + name.length() + old.bytes()));
+        }
+    }
+
+    public long size() {
+        return entries.get();
+    }
+
+    public long estimatedBytes() {
+        return bytes.get();
+    }
+
+    private static int lastSeparator(String path) {
+        return Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\'));
+    }
+
+    private record Entry(long size, long mtimeMs, byte[] hash, String algorithm, String fileKey) {
+        long bytes() {
+            return ENTRY_BYTES + ARRAY_BYTES + hash.length + (fileKey == null ? 0 : STRING_BYTES + fileKey.length());
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.mogrul.videocompressor.util;
+
+/** Lower case hex through a lookup table, allocating only the result string. */
+public final class HexFormatter {
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+    private HexFormatter() {}
+
+    public static String hex(byte[] bytes) {
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            out[i * 2] = DIGITS[(bytes[i] >> 4) & 0xF];
+            out[i * 2 + 1] = DIGITS[bytes[i] & 0xF];
+        }
+        return new String(out);
+    }
+
+    public static String hex(long value) {
+        char[] out = new char[16];
+        for (int i = 15; i >= 0; i--) {
+            out[i] = DIGITS[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+        return new String(out);
+    }
+}
@@ -0,0 +1,124 @@
+package com.mogrul.videocompressor.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Bounded priority window between a producer and a pipeline: items are handed to {@code sink} lowest rank first,
+ * ties in arrival order.
+ * <p>
+ * Nothing is dispatched until the window has filled or {@link #release()} is called (the producer has caught up),
+ * so the first items found don't jump the queue just because the pipeline was empty. After that the dispatcher
+ * keeps the pipeline fed and the window only orders what is waiting. {@link #put} blocks while the window is
+ * full, so memory stays flat however many items the producer has.
+ */
+public final class JobScheduler<T> implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(JobScheduler.class);
+
+    private final int capacity;
+    private final Consumer<T> sink;
+    private final PriorityQueue<Ranked<T>> window;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition ready = lock.newCondition();
+    private final Thread dispatcher;
+
+    private long sequence;
+    private boolean released;
+    private boolean closed;
+
+    /** @param sink receives items one at a time on the dispatcher thread; it may block to apply backpressure */
+    public JobScheduler(String name, int capacity, Consumer<T> sink) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be > 0");
+        this.capacity = capacity;
+        this.sink = sink;
+        this.window = new PriorityQueue<>(Math.min(capacity, 1024));
+        this.dispatcher = new NamedThreadFactory(name).newThread(this::dispatch);
+        dispatcher.start();
+    }
+
+    /** Adds an item, waiting while the window is full. */
+    public void put(T item, long rank) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (window.size() >= capacity && !closed) notFull.await();
+            if (closed) throw new IllegalStateException("Scheduler is closed");
+
+            window.add(new Ranked<>(rank, sequence++, item));
+            if (window.size() >= capacity) released = true;
+            ready.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Starts dispatching without waiting for the window to fill. */
+    public void release() {
+        lock.lock();
+        try {
+            released = true;
+            ready.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int waiting() {
+        lock.lock();
+        try {
+            return window.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void dispatch() {
+        while (true) {
+            T next;
+            lock.lock();
+            try {
+                while (!(released && !window.isEmpty()) && !(closed && window.isEmpty())) ready.awaitUninterruptibly();
+                if (window.isEmpty()) return;
+
+                next = window.poll().item;
+                notFull.signal();
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                sink.accept(next);
+            } catch (RuntimeException e) {
+                logger.error("[SCHEDULE] Could not start {} :: {}", next, e.getMessage());
+            }
+        }
+    }
+
+    /** Hands over everything still waiting, then stops the dispatcher. */
+    @Override
+    public void close() throws InterruptedException {
+        lock.lock();
+        try {
+            closed = true;
+            released = true;
+            ready.signal();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        dispatcher.join();
+    }
+
+    private record Ranked<T>(long rank, long sequence, T item) implements Comparable<Ranked<T>> {
+        @Override
+        public int compareTo(Ranked<T> o) {
+            int c = Long.compare(rank, o.rank);
+            return c != 0 ? c : Long.compare(sequence, o.sequence);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.mogrul.videocompressor.util;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Counting semaphore that hands permits to waiters lowest rank first, ties in arrival order, and can be resized
+ * while permits are held. After a shrink the count may go negative; waiters then stay parked until enough
+ * permits come back.
+ */
+public final class PrioritySemaphore {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>();
+    private int permits;
+    private long sequence;
+
+    public PrioritySemaphore(int permits) {
+        this.permits = permits;
+    }
+
+    public void acquire(long rank) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            if (waiters.isEmpty() && permits > 0) {
+                permits--;
+                return;
+            }
+
+            Waiter w = new Waiter(rank, sequence++, lock.newCondition());
+            waiters.add(w);
+            try {
+                while (waiters.peek() != w || permits <= 0) w.turn.await();
+            } catch (InterruptedException e) {
+                waiters.remove(w);
+                signalNext();
+                throw e;
+            }
+            waiters.poll();
+            permits--;
+            signalNext();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Takes a permit if one is free right now, regardless of who is waiting. */
+    public boolean tryAcquire() {
+        lock.lock();
+        try {
+            if (permits <= 0) return false;
+            permits--;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void release() {
+        adjust(1);
+    }
+
+    /** Adds (or with a negative delta, withdraws) permits. */
+    public void adjust(int delta) {
+        lock.lock();
+        try {
+            permits += delta;
+            signalNext();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int waiting() {
+        lock.lock();
+        try {
+            return waiters.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void signalNext() {
+        if (permits > 0 && !waiters.isEmpty()) waiters.peek().turn.signal();
+    }
+
+    private record Waiter(long rank, long sequence, Condition turn) implements Comparable<Waiter> {
+        @Override
+        public int compareTo(Waiter o) {
+            int c = Long.compare(rank, o.rank);
+            return c != 0 ? c : Long.compare(sequence, o.sequence);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.mogrul.videocompressor.util;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Token bucket shared by every stream of one transfer direction.
+ * <p>
+ * Callers take tokens under a fair lock and sleep off any debt while holding it, so waiting streams are
+ * served strictly in arrival order. Every file copies with the same number of streams asking for the same
+ * quantum, which gives each in-flight transfer an equal share of the rate.
+ */
+public final class RateLimiter {
+    /** Largest single request, keeping the FIFO interleaving between streams fine grained. */
+    public static final int QUANTUM = 1024 * 1024;
+
+    private final long bytesPerSecond;
+    private final ReentrantLock lock = new ReentrantLock(true);
+
+    private double tokens;
+    private long lastRefillNanos;
+
+    /** @param bytesPerSecond the allowed rate, or 0 for no limit */
+    public RateLimiter(long bytesPerSecond) {
+        if (bytesPerSecond < 0) throw new IllegalArgumentException("bytesPerSecond must be >= 0");
+        this.bytesPerSecond = bytesPerSecond;
+        this.tokens = bytesPerSecond;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    public boolean isLimited() {
+        return bytesPerSecond > 0;
+    }
+
+    /** Blocks until {@code bytes} may be transferred. */
+    public void acquire(long bytes) throws InterruptedIOException {
+        if (!isLimited() || bytes <= 0) return;
+
+        try {
+            lock.lockInterruptibly();
+            try {
+                long now = System.nanoTime();
+                // Bucket holds at most one second of burst
+                tokens = Math.min(bytesPerSecond, tokens + (now - lastRefillNanos) * bytesPerSecond / 1e9);
+                lastRefillNanos = now;
+
+                tokens -= bytes;
+                if (tokens < 0) {
+                    TimeUnit.NANOSECONDS.sleep((long) (-tokens * 1e9 / bytesPerSecond));
+                }
+            } finally {
+                lock.unlock();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for transfer bandwidth");
+        }
+    }
+}
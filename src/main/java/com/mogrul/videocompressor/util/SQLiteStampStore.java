@@ -1,18 +1,218 @@
 package com.mogrul.videocompressor.util;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mogrul.videocompressor.enu.FailureKind;
+import com.mogrul.videocompressor.enu.TranscodeAction;
 import com.mogrul.videocompressor.inter.StampStore;
+import com.mogrul.videocompressor.record.FailureRecord;
 import com.mogrul.videocompressor.record.FileStamp;
+import com.mogrul.videocompressor.record.MediaInfo;
+import com.mogrul.videocompressor.record.ScanDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sqlite.SQLiteConfig;
 
 import java.nio.file.Path;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
 
+/**
+ * SQLite job/probe store with one writer and a pool of readers.
+ * <p>
+ * Every write is queued to a dedicated writer thread, which commits whatever has queued up (up to
+ * {@code maxBatch} writes) in a single transaction, so concurrent workers share one fsync instead of paying
+ * for one each. Outcomes ({@code markDone}, {@code markSkipped}, {@code markFailed}) wait for their commit;
+ * bookkeeping writes ({@code markRunning}, probe cache, re-keys) don't. Reads run on read-only connections that
+ * see the latest commit through WAL without blocking the writer.
+ */
 public final class SQLiteStampStore implements StampStore {
+    private static final Logger logger = LoggerFactory.getLogger(SQLiteStampStore.class);
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    public static final int DEFAULT_READERS = 4;
+    public static final int DEFAULT_MAX_BATCH = 256;
+
+    private static final Set<String> FINISHED = Set.of("DONE", "SKIPPED");
+
+    private static final String SELECT_FINISHED_JOBS = """
+        SELECT source_path, size, mtime_ms, partial_sha256, stamp_algo, file_key
+        FROM compress_jobs
+        WHERE status IN ('DONE', 'SKIPPED')
+    """;
+
+    private static final String SELECT_RUNNING_JOBS = """
+        SELECT source_path, size, mtime_ms, partial_sha256, stamp_algo, file_key
+        FROM compress_jobs
+        WHERE status = 'RUNNING'
+    """;
+
+    private static final String SELECT_JOB = """
+        SELECT status, size, mtime_ms, partial_sha256, stamp_algo, file_key
+        FROM compress_jobs
+        WHERE source_path = ?
+    """;
+
+    private static final String SELECT_FAILED_JOB = """
+        SELECT size, mtime_ms, partial_sha256, stamp_algo, file_key, failure_kind, attempts, next_attempt_at
+        FROM compress_jobs
+        WHERE source_path = ? AND status = 'FAILED'
+    """;
+
+    // A RUNNING row keeps the failure history it had, so a retry that fails again counts as another attempt
+    private static final String UPSERT_JOB = """
+        INSERT INTO compress_jobs (source_path, size, mtime_ms, partial_sha256, output_path, status, last_error, updated_at, decision, stamp_algo, file_key, failure_kind, attempts, next_attempt_at)
+        VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+        ON CONFLICT(source_path) DO UPDATE SET
+          size=excluded.size,
+          mtime_ms=excluded.mtime_ms,
+          partial_sha256=excluded.partial_sha256,
+          stamp_algo=excluded.stamp_algo,
+          file_key=excluded.file_key,
+          output_path=excluded.output_path,
+          status=excluded.status,
+          last_error=excluded.last_error,
+          updated_at=excluded.updated_at,
+          decision=excluded.decision,
+          failure_kind=CASE WHEN excluded.status = 'RUNNING' THEN compress_jobs.failure_kind ELSE excluded.failure_kind END,
+          attempts=CASE WHEN excluded.status = 'RUNNING' THEN compress_jobs.attempts ELSE excluded.attempts END,
+          next_attempt_at=CASE WHEN excluded.status = 'RUNNING' THEN compress_jobs.next_attempt_at ELSE excluded.next_attempt_at END
+    """;
+
+    private static final String REKEY_JOB =
+            "UPDATE compress_jobs SET partial_sha256 = ?, stamp_algo = ?, file_key = ? WHERE source_path = ?";
+
+    private static final String SELECT_MEDIA_INFO = """
+        SELECT size, mtime_ms, partial_sha256, stamp_algo, info_json
+        FROM media_info
+        WHERE source_path = ?
+    """;
+
+    private static final String UPSERT_MEDIA_INFO = """
+        INSERT INTO media_info (source_path, size, mtime_ms, partial_sha256, info_json, probed_at, stamp_algo)
+        VALUES (?, ?, ?, ?, ?, ?, ?)
+        ON CONFLICT(source_path) DO UPDATE SET
+          size=excluded.size,
+          mtime_ms=excluded.mtime_ms,
+          partial_sha256=excluded.partial_sha256,
+          stamp_algo=excluded.stamp_algo,
+          info_json=excluded.info_json,
+          probed_at=excluded.probed_at
+    """;
+
+    private static final String REKEY_MEDIA_INFO =
+            "UPDATE media_info SET partial_sha256 = ?, stamp_algo = ? WHERE source_path = ?";
+
+    private static final String DELETE_MEDIA_INFO = "DELETE FROM media_info WHERE source_path = ?";
+
+    private static final Write SHUTDOWN = new Write(null, null);
+
     private final Connection connection;
+    private final int maxBatch;
+    private final BlockingQueue<Write> writes = new LinkedBlockingQueue<>();
+    // Only touched by the writer thread
+    private final Map<String, PreparedStatement> writeStatements = new HashMap<>();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    private final BlockingQueue<Reader> readers;
+    // Null when disabled or too big for its memory limit; skip checks then query per file. Dropped for good once
+    // the jobs finished during the run push it past the limit.
+    private final long indexMemoryLimit;
+    private volatile FinishedJobIndex index;
 
     public SQLiteStampStore(Path dbPath) throws Exception {
-        this.connection = DriverManager.getConnection("jdbc:sqlite:" + dbPath.toString());
+        this(dbPath, DEFAULT_READERS, DEFAULT_MAX_BATCH, 0);
+    }
+
+    /**
+     * @param indexMemoryLimit heap the in-memory index of finished jobs may use, 0 to always query per file
+     */
+    public SQLiteStampStore(Path dbPath, int readerCount, int maxBatch, long indexMemoryLimit) throws Exception {
+        if (readerCount <= 0) throw new IllegalArgumentException("readerCount must be > 0");
+        if (maxBatch <= 0) throw new IllegalArgumentException("maxBatch must be > 0");
+
+        String url = "jdbc:sqlite:" + dbPath.toString();
+        this.connection = DriverManager.getConnection(url);
         this.connection.setAutoCommit(true);
         init();
+        this.connection.setAutoCommit(false);
+        this.maxBatch = maxBatch;
+
+        // Opened after init so the database is already in WAL mode and read-only connections can attach
+        SQLiteConfig readConfig = new SQLiteConfig();
+        readConfig.setReadOnly(true);
+        readConfig.setBusyTimeout(5000);
+        this.readers = new ArrayBlockingQueue<>(readerCount);
+        for (int i = 0; i < readerCount; i++) {
+            readers.add(new Reader(DriverManager.getConnection(url, readConfig.toProperties())));
+        }
+
+        this.indexMemoryLimit = indexMemoryLimit;
+        this.index = indexMemoryLimit > 0 ? loadIndex(indexMemoryLimit) : null;
+
+        this.writer = new Thread(this::writeLoop, "StampStore-Writer");
+        this.writer.start();
+    }
+
+    private FinishedJobIndex loadIndex(long memoryLimit) throws Exception {
+        long start = System.nanoTime();
+        FinishedJobIndex loaded = new FinishedJobIndex();
+
+        boolean fits = read(r -> {
+            try (Statement st = r.connection.createStatement()) {
+                st.setFetchSize(10_000);
+                try (ResultSet rs = st.executeQuery(SELECT_FINISHED_JOBS)) {
+                    while (rs.next()) {
+                        loaded.put(rs.getString("source_path"), stampOf(rs));
+                        if (loaded.estimatedBytes() > memoryLimit) return false;
+                    }
+                }
+            }
+            return true;
+        });
+
+        if (!fits) {
+            logger.warn("[INDEX] Finished jobs need more than {}, checking each file against the database instead",
+                    SizeFormatUtil.humanBytes(memoryLimit));
+            return null;
+        }
+
+        long perMillion = loaded.size() == 0 ? 0 : loaded.estimatedBytes() * 1_000_000 / loaded.size();
+        logger.info("[INDEX] Loaded {} finished jobs in {} ms, ~{} (~{} per million)",
+                loaded.size(),
+                (System.nanoTime() - start) / 1_000_000,
+                SizeFormatUtil.humanBytes(loaded.estimatedBytes()),
+                SizeFormatUtil.humanBytes(perMillion)
+        );
+        return loaded;
+    }
+
+    /** Adds a finished job to the index, dropping the index if that takes it past its memory limit. */
+    private void indexFinished(String sourcePath, FileStamp stamp) {
+        FinishedJobIndex finishedJobs = index;
+        if (finishedJobs == null) return;
+
+        finishedJobs.put(sourcePath, stamp);
+        if (finishedJobs.estimatedBytes() <= indexMemoryLimit) return;
+
+        // The row is already written (or queued, for a rekey), so the database answers for it from here on
+        synchronized (this) {
+            if (index != finishedJobs) return;
+            index = null;
+        }
+        logger.warn("[INDEX] Finished jobs grew past {}, checking each file against the database from now on",
+                SizeFormatUtil.humanBytes(indexMemoryLimit));
     }
 
     private void init() throws SQLException {
@@ -31,80 +231,446 @@ public final class SQLiteStampStore implements StampStore {
             """);
 
             st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_status ON compress_jobs(status);");
+            addColumnIfMissing(st, "compress_jobs", "decision", "TEXT");
+            // Rows written before stamps recorded their algorithm all used the head-only SHA-256
+            addColumnIfMissing(st, "compress_jobs", "stamp_algo", "TEXT NOT NULL DEFAULT 'sha256-head'");
+            addColumnIfMissing(st, "compress_jobs", "file_key", "TEXT");
+            // Retry bookkeeping for FAILED rows: runs failed in a row and when the next one may try again
+            addColumnIfMissing(st, "compress_jobs", "failure_kind", "TEXT");
+            addColumnIfMissing(st, "compress_jobs", "attempts", "INTEGER NOT NULL DEFAULT 0");
+            addColumnIfMissing(st, "compress_jobs", "next_attempt_at", "INTEGER NOT NULL DEFAULT 0");
+
+            // Parsed ffprobe results, only valid while the source keeps the same stamp
+            st.executeUpdate("""
+                CREATE TABLE IF NOT EXISTS media_info (
+                  source_path TEXT PRIMARY KEY,
+                  size INTEGER NOT NULL,
+                  mtime_ms INTEGER NOT NULL,
+                  partial_sha256 TEXT NOT NULL,
+                  info_json TEXT NOT NULL,
+                  probed_at INTEGER NOT NULL
+                );
+            """);
+            addColumnIfMissing(st, "media_info", "stamp_algo", "TEXT NOT NULL DEFAULT 'sha256-head'");
+
+            // Directory listing state from the last completed scan, for incremental rescans
+            st.executeUpdate("""
+                CREATE TABLE IF NOT EXISTS scan_dirs (
+                  path TEXT PRIMARY KEY,
+                  parent TEXT,
+                  mtime_ms INTEGER NOT NULL,
+                  entry_count INTEGER NOT NULL,
+                  video_count INTEGER NOT NULL,
+                  complete INTEGER NOT NULL
+                );
+            """);
+
             st.executeUpdate("PRAGMA journal_mode=WAL;");
             st.executeUpdate("PRAGMA synchronous=NORMAL;");
             st.executeUpdate("PRAGMA busy_timeout=5000;");
         }
     }
 
+    private static void addColumnIfMissing(Statement st, String table, String column, String type) throws SQLException {
+        try (ResultSet rs = st.executeQuery("PRAGMA table_info(" + table + ");")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) return;
+            }
+        }
+        st.executeUpdate("ALTER TABLE " + table + " ADD COLUMN " + column + " " + type + ";");
+    }
+
+    // ---------------------------
+    // Reads
+    // ---------------------------
+
     @Override
     public boolean isUpToDate(String sourcePath, FileStamp stamp) throws Exception {
-        try (PreparedStatement ps = connection.prepareStatement("""
-            SELECT status, size, mtime_ms, partial_sha256
-            FROM compress_jobs
-            WHERE source_path = ?
-        """)) {
+        FinishedJobIndex finishedJobs = index;
+        FileStamp finished = finishedJobs != null ? finishedJobs.get(sourcePath) : read(r -> {
+            PreparedStatement ps = r.statement(SELECT_JOB);
             ps.setString(1, sourcePath);
             try (ResultSet rs = ps.executeQuery()) {
-                if (!rs.next()) return false;
+                if (!rs.next() || !FINISHED.contains(rs.getString("status"))) return null;
+                return stampOf(rs);
+            }
+        });
+
+        Match match = finished == null ? Match.NONE : match(finished, stamp);
+        if (match == Match.REKEY) {
+            indexFinished(sourcePath, stamp);
+            writeLater(() -> {
+                PreparedStatement ps = writeStatement(REKEY_JOB);
+                ps.setString(1, stamp.partialHash());
+                ps.setString(2, stamp.algorithm());
+                ps.setString(3, stamp.fileKey());
+                ps.setString(4, sourcePath);
+                ps.executeUpdate();
+            });
+        }
+        return match != Match.NONE;
+    }
+
+    /** Compares a fresh stamp against the stamp a finished job was recorded with. */
+    private static Match match(FileStamp finished, FileStamp stamp) {
+        if (finished.size() != stamp.size() || finished.mtimeMs() != stamp.mtimeMs()) return Match.NONE;
+
+        String fileKey = finished.fileKey();
+        boolean sameKey = fileKey == null || stamp.fileKey() == null || fileKey.equals(stamp.fileKey());
+
+        // Metadata-only check: trusted as long as the file system identity (where known) agrees
+        if (!stamp.hasFingerprint()) return sameKey ? Match.SAME : Match.NONE;
+
+        boolean sameAlgo = stamp.algorithm().equals(finished.algorithm());
+        if (sameAlgo && !finished.partialHash().equals(stamp.partialHash())) return Match.NONE;
+
+        // Stamped with another algorithm, or the file got a new identity (restored, remounted) with the same
+        // content: adopt the new stamp instead of recompressing
+        boolean rekey = !sameAlgo || !sameKey || (fileKey == null && stamp.fileKey() != null);
+        return rekey ? Match.REKEY : Match.SAME;
+    }
+
+    private static FileStamp stampOf(ResultSet rs) throws SQLException {
+        return new FileStamp(
+                rs.getLong("size"),
+                rs.getLong("mtime_ms"),
+                rs.getString("file_key"),
+                rs.getString("partial_sha256"),
+                rs.getString("stamp_algo")
+        );
+    }
+
+    @Override
+    public Optional<MediaInfo> findMediaInfo(String sourcePath, FileStamp stamp) throws Exception {
+        Optional<String> json = read(r -> {
+            PreparedStatement ps = r.statement(SELECT_MEDIA_INFO);
+            ps.setString(1, sourcePath);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return Optional.<String>empty();
+
+                // Same rule as isUpToDate: a fingerprint from another algorithm can't be compared, size + mtime decide
+                boolean sameAlgo = stamp.algorithm().equals(rs.getString("stamp_algo"));
+                boolean sameStamp = rs.getLong("size") == stamp.size()
+                        && rs.getLong("mtime_ms") == stamp.mtimeMs()
+                        && (!sameAlgo || rs.getString("partial_sha256").equals(stamp.partialHash()));
 
-                String status = rs.getString("status");
-                long size = rs.getLong("size");
-                long mtime = rs.getLong("mtime_ms");
-                String partial = rs.getString("partial_sha256");
+                if (!sameStamp) return null;
 
-                return "DONE".equals(status)
-                        && size == stamp.size()
-                        && mtime == stamp.mtimeMs()
-                        && partial.equals(stamp.partialSha256());
+                if (!sameAlgo) {
+                    writeLater(() -> {
+                        PreparedStatement rekey = writeStatement(REKEY_MEDIA_INFO);
+                        rekey.setString(1, stamp.partialHash());
+                        rekey.setString(2, stamp.algorithm());
+                        rekey.setString(3, sourcePath);
+                        rekey.executeUpdate();
+                    });
+                }
+                return Optional.of(rs.getString("info_json"));
             }
+        });
+
+        if (json == null) {
+            // The file changed since it was probed
+            writeLater(() -> {
+                PreparedStatement ps = writeStatement(DELETE_MEDIA_INFO);
+                ps.setString(1, sourcePath);
+                ps.executeUpdate();
+            });
+            return Optional.empty();
         }
+        return json.isEmpty() ? Optional.empty() : Optional.of(mapper.readValue(json.get(), MediaInfo.class));
+    }
+
+    @Override
+    public Optional<FailureRecord> findFailure(String sourcePath) throws Exception {
+        return read(r -> {
+            PreparedStatement ps = r.statement(SELECT_FAILED_JOB);
+            ps.setString(1, sourcePath);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return Optional.empty();
+                return Optional.of(new FailureRecord(
+                        stampOf(rs),
+                        FailureKind.fromName(rs.getString("failure_kind")),
+                        rs.getInt("attempts"),
+                        rs.getLong("next_attempt_at")
+                ));
+            }
+        });
+    }
+
+    @Override
+    public Map<String, FileStamp> loadRunning() throws Exception {
+        return read(r -> {
+            Map<String, FileStamp> running = new HashMap<>();
+            try (Statement st = r.connection.createStatement();
+                 ResultSet rs = st.executeQuery(SELECT_RUNNING_JOBS)) {
+                while (rs.next()) running.put(rs.getString("source_path"), stampOf(rs));
+            }
+            return running;
+        });
     }
 
+    @Override
+    public Map<String, ScanDir> loadScanDirs() throws Exception {
+        return read(r -> {
+            Map<String, ScanDir> dirs = new HashMap<>();
+            try (Statement st = r.connection.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT path, parent, mtime_ms, entry_count, video_count, complete FROM scan_dirs")) {
+                while (rs.next()) {
+                    ScanDir d = new ScanDir(
+                            rs.getString("path"),
+                            rs.getString("parent"),
+                            rs.getLong("mtime_ms"),
+                            rs.getInt("entry_count"),
+                            rs.getInt("video_count"),
+                            rs.getInt("complete") != 0
+                    );
+                    dirs.put(d.path(), d);
+                }
+            }
+            return dirs;
+        });
+    }
+
+    private <T> T read(ReadOp<T> op) throws Exception {
+        Reader reader = readers.take();
+        try {
+            return op.apply(reader);
+        } finally {
+            readers.add(reader);
+        }
+    }
+
+    // ---------------------------
+    // Writes
+    // ---------------------------
+
     @Override
     public void markRunning(String sourcePath, FileStamp stamp) throws Exception {
-        upsert(sourcePath, stamp, null, "RUNNING", null);
+        FinishedJobIndex finishedJobs = index;
+        if (finishedJobs != null) finishedJobs.remove(sourcePath);
+        writeLater(() -> upsert(sourcePath, stamp, null, "RUNNING", null, null, null));
     }
 
     @Override
-    public void markDone(String sourcePath, FileStamp stamp, String outputPath) throws Exception {
-        upsert(sourcePath, stamp, outputPath, "DONE", null);
+    public void markDone(String sourcePath, FileStamp stamp, String outputPath, TranscodeAction decision) throws Exception {
+        writeNow(() -> upsert(sourcePath, stamp, outputPath, "DONE", null, decision, null));
+        indexFinished(sourcePath, stamp);
     }
 
     @Override
-    public void markFailed(String sourcePath, FileStamp stamp, String error) throws Exception {
-        upsert(sourcePath, stamp, null, "FAILED", error);
+    public void markSkipped(String sourcePath, FileStamp stamp, TranscodeAction decision) throws Exception {
+        writeNow(() -> upsert(sourcePath, stamp, null, "SKIPPED", null, decision, null));
+        indexFinished(sourcePath, stamp);
     }
 
-    private void upsert(String sourcePath, FileStamp stamp, String outputPath, String status, String lastError) throws Exception {
+    @Override
+    public void markFailed(String sourcePath, String error, FailureRecord failure) throws Exception {
+        FinishedJobIndex finishedJobs = index;
+        if (finishedJobs != null) finishedJobs.remove(sourcePath);
+        writeNow(() -> upsert(sourcePath, failure.stamp(), null, "FAILED", error, null, failure));
+    }
+
+    @Override
+    public void saveMediaInfo(String sourcePath, FileStamp stamp, MediaInfo info) throws Exception {
+        String json = mapper.writeValueAsString(info);
         long now = System.currentTimeMillis();
 
-        try (PreparedStatement ps = connection.prepareStatement("""
-            INSERT INTO compress_jobs (source_path, size, mtime_ms, partial_sha256, output_path, status, last_error, updated_at)
-            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
-            ON CONFLICT(source_path) DO UPDATE SET
-              size=excluded.size,
-              mtime_ms=excluded.mtime_ms,
-              partial_sha256=excluded.partial_sha256,
-              output_path=excluded.output_path,
-              status=excluded.status,
-              last_error=excluded.last_error,
-              updated_at=excluded.updated_at
-        """)) {
+        writeLater(() -> {
+            PreparedStatement ps = writeStatement(UPSERT_MEDIA_INFO);
             ps.setString(1, sourcePath);
             ps.setLong(2, stamp.size());
             ps.setLong(3, stamp.mtimeMs());
-            ps.setString(4, stamp.partialSha256());
-            ps.setString(5, outputPath);
-            ps.setString(6, status);
-            ps.setString(7, lastError);
-            ps.setLong(8, now);
+            ps.setString(4, stamp.partialHash());
+            ps.setString(5, json);
+            ps.setLong(6, now);
+            ps.setString(7, stamp.algorithm());
             ps.executeUpdate();
+        });
+    }
+
+    @Override
+    public void saveScanDirs(Collection<ScanDir> dirs) throws Exception {
+        // One write so the table is never seen half replaced
+        writeNow(() -> {
+            writeStatement("DELETE FROM scan_dirs").executeUpdate();
+            PreparedStatement ps = writeStatement(
+                    "INSERT INTO scan_dirs (path, parent, mtime_ms, entry_count, video_count, complete) VALUES (?, ?, ?, ?, ?, ?)");
+            for (ScanDir d : dirs) {
+                ps.setString(1, d.path());
+                ps.setString(2, d.parent());
+                ps.setLong(3, d.mtimeMs());
+                ps.setInt(4, d.entryCount());
+                ps.setInt(5, d.videoCount());
+                ps.setInt(6, d.complete() ? 1 : 0);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        });
+    }
+
+    private void upsert(String sourcePath, FileStamp stamp, String outputPath, String status, String lastError,
+                        TranscodeAction decision, FailureRecord failure) throws SQLException {
+        PreparedStatement ps = writeStatement(UPSERT_JOB);
+        ps.setString(1, sourcePath);
+        ps.setLong(2, stamp.size());
+        ps.setLong(3, stamp.mtimeMs());
+        ps.setString(4, stamp.partialHash());
+        ps.setString(5, outputPath);
+        ps.setString(6, status);
+        ps.setString(7, lastError);
+        ps.setLong(8, System.currentTimeMillis());
+        ps.setString(9, decision == null ? null : decision.name());
+        ps.setString(10, stamp.algorithm());
+        ps.setString(11, stamp.fileKey());
+        ps.setString(12, failure == null ? null : failure.kind().name());
+        ps.setInt(13, failure == null ? 0 : failure.attempts());
+        ps.setLong(14, failure == null ? 0 : failure.nextAttemptAtMs());
+        ps.executeUpdate();
+    }
+
+    /** Queues a write and waits until its transaction has committed. */
+    private void writeNow(SqlWrite op) throws Exception {
+        try {
+            enqueue(op).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
         }
     }
 
+    /** Queues a write without waiting; a failure is only logged. */
+    private void writeLater(SqlWrite op) {
+        enqueue(op).exceptionally(e -> {
+            logger.warn("[STORE] Background write failed :: {}", e.getMessage());
+            return null;
+        });
+    }
+
+    private CompletableFuture<Void> enqueue(SqlWrite op) {
+        if (closed) throw new IllegalStateException("Store is closed");
+        Write w = new Write(op, new CompletableFuture<>());
+        writes.add(w);
+        return w.done;
+    }
+
+    private PreparedStatement writeStatement(String sql) throws SQLException {
+        PreparedStatement ps = writeStatements.get(sql);
+        if (ps == null) {
+            ps = connection.prepareStatement(sql);
+            writeStatements.put(sql, ps);
+        }
+        return ps;
+    }
+
+    private void writeLoop() {
+        List<Write> batch = new ArrayList<>(maxBatch);
+        boolean running = true;
+
+        while (running) {
+            try {
+                batch.add(writes.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            writes.drainTo(batch, maxBatch - 1);
+
+            running = !batch.remove(SHUTDOWN);
+            commit(batch);
+            batch.clear();
+        }
+
+        // Anything that slipped in while closing still gets written
+        writes.drainTo(batch);
+        batch.remove(SHUTDOWN);
+        commit(batch);
+    }
+
+    private void commit(List<Write> batch) {
+        if (batch.isEmpty()) return;
+
+        List<Write> applied = new ArrayList<>(batch.size());
+        try {
+            for (Write w : batch) {
+                // A write may run several statements (saveScanDirs deletes, then inserts); one that fails part
+                // way is rolled back to here, so none of its effects reach the commit
+                Savepoint before = connection.setSavepoint();
+                try {
+                    w.op.execute();
+                    applied.add(w);
+                } catch (Exception e) {
+                    // A failed statement (or a bad argument, e.g. a null stamp field) leaves the rest of the
+                    // transaction intact, and the writer thread alive for everyone waiting on it
+                    connection.rollback(before);
+                    w.done.completeExceptionally(e);
+                }
+                connection.releaseSavepoint(before);
+            }
+            connection.commit();
+        } catch (Exception e) {
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackError) {
+                e.addSuppressed(rollbackError);
+            }
+            // Writes that already failed keep their own error
+            for (Write w : batch) w.done.completeExceptionally(e);
+            return;
+        }
+
+        for (Write w : applied) w.done.complete(null);
+    }
+
     @Override
     public void close() throws Exception {
+        closed = true;
+        writes.add(SHUTDOWN);
+        writer.join();
+
+        for (Reader r : readers) r.close();
+        for (PreparedStatement ps : writeStatements.values()) ps.close();
         connection.close();
     }
+
+    // ---------------------------
+    // Plumbing
+    // ---------------------------
+
+    private enum Match { NONE, SAME, REKEY }
+
+    @FunctionalInterface
+    private interface SqlWrite {
+        void execute() throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface ReadOp<T> {
+        T apply(Reader reader) throws SQLException;
+    }
+
+    private record Write(SqlWrite op, CompletableFuture<Void> done) {}
+
+    /** One read-only connection and its prepared statements, used by one thread at a time. */
+    private static final class Reader implements AutoCloseable {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+        Reader(Connection connection) {
+            this.connection = connection;
+        }
+
+        PreparedStatement statement(String sql) throws SQLException {
+            PreparedStatement ps = statements.get(sql);
+            if (ps == null) {
+                ps = connection.prepareStatement(sql);
+                statements.put(sql, ps);
+            }
+            return ps;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            for (PreparedStatement ps : statements.values()) ps.close();
+            connection.close();
+        }
+    }
 }
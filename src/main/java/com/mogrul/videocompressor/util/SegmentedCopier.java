@@ -0,0 +1,295 @@
+package com.mogrul.videocompressor.util;
+
+import com.mogrul.videocompressor.enu.CopyMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+import java.util.stream.IntStream;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Copies a file as fixed size chunks over several parallel streams using positional reads/writes.
+ * <p>
+ * Progress is tracked in a {@code <dst>.parts} sidecar holding one bit per finished chunk, so an interrupted
+ * copy resumes with only the missing chunks. The sidecar is removed once every chunk has landed, which makes
+ * "destination exists without a sidecar" the marker for a complete copy.
+ */
+public final class SegmentedCopier {
+    private static final Logger logger = LoggerFactory.getLogger(SegmentedCopier.class);
+
+    private static final long MAGIC = 0x5643_5041_5254_5331L; // "VCPARTS1"
+    private static final int HEADER_BYTES = 4 * Long.BYTES;
+    private static final int MAX_BUFFER = 4 * 1024 * 1024;
+
+    // File systems where kernel copies gain nothing or misbehave, so AUTO keeps the buffered path
+    private static final Set<String> BUFFERED_FS_TYPES = Set.of("cifs", "smb", "smbfs", "smb2", "smb3", "9p", "fuseblk");
+
+    private static final RateLimiter UNLIMITED = new RateLimiter(0);
+    private static final LongConsumer IGNORE_PROGRESS = bytes -> {};
+
+    private final int streams;
+    private final int chunkSize;
+    private final CopyMode mode;
+    private final ExecutorService executor;
+
+    public SegmentedCopier(int streams, int chunkSize, CopyMode mode, ExecutorService executor) {
+        if (streams <= 0) throw new IllegalArgumentException("streams must be > 0");
+        if (chunkSize <= 0) throw new IllegalArgumentException("chunkSize must be > 0");
+        this.streams = streams;
+        this.chunkSize = chunkSize;
+        this.mode = mode;
+        this.executor = executor;
+    }
+
+    public static Path sidecarOf(Path dst) {
+        return dst.resolveSibling(dst.getFileName().toString() + ".parts");
+    }
+
+    public long copy(Path src, Path dst) throws IOException {
+        return copy(src, dst, UNLIMITED, IGNORE_PROGRESS);
+    }
+
+    /**
+     * Copies {@code src} to {@code dst}, resuming from the sidecar if one matches, with every stream
+     * drawing from {@code limiter}. {@code progress} is handed the bytes of each buffer or transfer as it
+     * lands (from several streams at once), so callers can follow the rate while the copy runs.
+     * Returns bytes actually copied.
+     */
+    public long copy(Path src, Path dst, RateLimiter limiter, LongConsumer progress) throws IOException {
+        long size = Files.size(src);
+        long mtime = Files.getLastModifiedTime(src).toMillis();
+        int chunks = (int) ((size + chunkSize - 1) / chunkSize);
+        Path sidecar = sidecarOf(dst);
+
+        BitSet done = loadProgress(sidecar, dst, size, mtime, chunks);
+        writeProgress(sidecar, size, mtime, done, chunks);
+
+        try (FileChannel out = FileChannel.open(dst, CREATE, WRITE)) {
+            if (out.size() > size) out.truncate(size);
+        }
+
+        int[] pending = IntStream.range(0, chunks).filter(i -> !done.get(i)).toArray();
+        long resumed = size;
+        for (int chunk : pending) resumed -= chunkLength(chunk, size);
+
+        if (resumed > 0) {
+            logger.info("[RESUME] {} ({} / {})",
+                    dst.getFileName(),
+                    SizeFormatUtil.humanBytes(resumed),
+                    SizeFormatUtil.humanBytes(size)
+            );
+        }
+
+        if (pending.length > 0) {
+            copyChunks(src, dst, sidecar, size, pending, useZeroCopy(src, dst), limiter, progress);
+        }
+
+        // Verify size at the end (important for resume correctness)
+        long finalSize = Files.size(dst);
+        if (finalSize != size) {
+            throw new IOException("Copy incomplete: " + dst + " is " + finalSize + " bytes, expected " + size);
+        }
+
+        Files.deleteIfExists(sidecar);
+        return size - resumed;
+    }
+
+    private void copyChunks(Path src, Path dst, Path sidecar, long size, int[] pending, boolean zeroCopy,
+                            RateLimiter limiter, LongConsumer progressed) throws IOException {
+        AtomicInteger next = new AtomicInteger();
+        AtomicBoolean failed = new AtomicBoolean();
+        int workers = Math.min(streams, pending.length);
+
+        try (FileChannel progress = FileChannel.open(sidecar, READ, WRITE)) {
+            Runnable stream = () -> {
+                try (FileChannel in = FileChannel.open(src, READ);
+                     FileChannel out = FileChannel.open(dst, WRITE)) {
+                    ByteBuffer buf = zeroCopy ? null : ByteBuffer.allocateDirect(Math.min(chunkSize, MAX_BUFFER));
+
+                    int n;
+                    while (!failed.get() && (n = next.getAndIncrement()) < pending.length) {
+                        int chunk = pending[n];
+                        long offset = (long) chunk * chunkSize;
+                        if (zeroCopy) {
+                            transferChunk(in, out, offset, chunkLength(chunk, size), limiter, progressed);
+                        } else {
+                            copyChunk(in, out, buf, offset, chunkLength(chunk, size), limiter, progressed);
+                        }
+                        markDone(progress, chunk);
+                    }
+                } catch (IOException e) {
+                    failed.set(true);
+                    throw new StreamFailure(e);
+                }
+            };
+
+            // The calling thread runs one stream itself, so a busy executor can never stall the copy
+            List<Future<?>> others = new ArrayList<>();
+            for (int i = 1; i < workers; i++) others.add(executor.submit(stream));
+
+            IOException failure = null;
+            try {
+                stream.run();
+            } catch (StreamFailure e) {
+                failure = e.getCause();
+            }
+
+            for (Future<?> f : others) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    IOException cause = e.getCause() instanceof StreamFailure sf ? sf.getCause() : new IOException(e.getCause());
+                    if (failure == null) failure = cause; else failure.addSuppressed(cause);
+                } catch (InterruptedException e) {
+                    failed.set(true);
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while copying " + src);
+                }
+            }
+
+            if (failure != null) throw failure;
+        }
+    }
+
+    private long chunkLength(int chunk, long size) {
+        return Math.min(chunkSize, size - (long) chunk * chunkSize);
+    }
+
+    private static void copyChunk(FileChannel in, FileChannel out, ByteBuffer buf, long offset, long length,
+                                  RateLimiter limiter, LongConsumer progressed) throws IOException {
+        long pos = offset;
+        long end = offset + length;
+        int step = limiter.isLimited() ? Math.min(buf.capacity(), RateLimiter.QUANTUM) : buf.capacity();
+
+        while (pos < end) {
+            buf.clear();
+            buf.limit((int) Math.min(step, end - pos));
+            limiter.acquire(buf.limit());
+
+            int read = in.read(buf, pos);
+            if (read < 0) throw new IOException("Source ended early at " + pos + " bytes");
+
+            buf.flip();
+            long writePos = pos;
+            while (buf.hasRemaining()) {
+                writePos += out.write(buf, writePos);
+            }
+            pos += read;
+            progressed.accept(read);
+        }
+    }
+
+    private static void transferChunk(FileChannel in, FileChannel out, long offset, long length,
+                                      RateLimiter limiter, LongConsumer progressed) throws IOException {
+        // Each stream owns its destination channel, so moving its position is safe
+        out.position(offset);
+        long pos = offset;
+        long end = offset + length;
+
+        while (pos < end) {
+            long step = limiter.isLimited() ? Math.min(RateLimiter.QUANTUM, end - pos) : end - pos;
+            limiter.acquire(step);
+            long moved = in.transferTo(pos, step, out);
+            // A file-to-file transfer only moves nothing at end of file; anywhere else it would loop forever
+            if (moved <= 0) {
+                throw new IOException(pos >= in.size()
+                        ? "Source ended early at " + pos + " bytes"
+                        : "Transfer made no progress at " + pos + " bytes");
+            }
+            pos += moved;
+            progressed.accept(moved);
+        }
+    }
+
+    private boolean useZeroCopy(Path src, Path dst) {
+        return switch (mode) {
+            case BUFFERED -> false;
+            case ZERO_COPY -> true;
+            case AUTO -> isOrdinaryFileSystem(src) && isOrdinaryFileSystem(dst);
+        };
+    }
+
+    private static boolean isOrdinaryFileSystem(Path p) {
+        if (p.getFileSystem() != FileSystems.getDefault()) return false;
+        try {
+            FileStore store = Files.getFileStore(Files.exists(p) ? p : p.toAbsolutePath().getParent());
+            String type = store.type().toLowerCase(Locale.ROOT);
+            return !BUFFERED_FS_TYPES.contains(type) && !type.startsWith("fuse");
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void markDone(FileChannel progress, int chunk) throws IOException {
+        // Chunks sharing a bitmap byte can finish at the same time, so the read-modify-write is serialised
+        synchronized (progress) {
+            long at = HEADER_BYTES + chunk / 8;
+            ByteBuffer b = ByteBuffer.allocate(1);
+            progress.read(b, at);
+            byte bits = b.position() == 1 ? b.get(0) : 0;
+
+            b.clear();
+            b.put((byte) (bits | (1 << (chunk % 8)))).flip();
+            progress.write(b, at);
+        }
+    }
+
+    private BitSet loadProgress(Path sidecar, Path dst, long size, long mtime, int chunks) throws IOException {
+        if (Files.exists(sidecar) && Files.exists(dst)) {
+            ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(sidecar));
+            if (b.remaining() >= HEADER_BYTES
+                    && b.getLong() == MAGIC
+                    && b.getLong() == size
+                    && b.getLong() == mtime
+                    && b.getLong() == chunkSize) {
+                return BitSet.valueOf(b);
+            }
+
+            logger.warn("[RESET] Source changed since the partial copy, restarting: {}", dst);
+            Files.deleteIfExists(dst);
+            return new BitSet(chunks);
+        }
+
+        // Without a sidecar nothing says what the existing bytes are (a stale tmp from an older run, a failed
+        // rename), so they are never trusted
+        if (Files.exists(dst)) {
+            logger.warn("[RESET] No progress record for existing {}, copying from the start", dst);
+            Files.delete(dst);
+        }
+        return new BitSet(chunks);
+    }
+
+    private void writeProgress(Path sidecar, long size, long mtime, BitSet done, int chunks) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(HEADER_BYTES + (chunks + 7) / 8);
+        b.putLong(MAGIC).putLong(size).putLong(mtime).putLong(chunkSize);
+        b.put(done.toByteArray());
+        Files.write(sidecar, b.array(), CREATE, WRITE, TRUNCATE_EXISTING);
+    }
+
+    private static final class StreamFailure extends RuntimeException {
+        StreamFailure(IOException cause) { super(cause); }
+
+        @Override
+        public synchronized IOException getCause() { return (IOException) super.getCause(); }
+    }
+}
@@ -22,4 +22,24 @@ public class SizeFormatUtil {
         int decimals = (unit == 0) ? 0 : (v < 10 ? 2 : 1);
         return String.format(Locale.ROOT, "%." + decimals + "f %s", v, UNITS[unit]);
     }
+
+    /** Parses sizes like "512", "64K", "200G" or "1.5TiB" (binary units) into bytes. */
+    public static long parseBytes(String text) {
+        String s = text.trim().toUpperCase(Locale.ROOT);
+        if (s.endsWith("IB")) s = s.substring(0, s.length() - 2);
+        else if (s.endsWith("B")) s = s.substring(0, s.length() - 1);
+
+        int unit = 0;
+        if (!s.isEmpty()) {
+            int idx = "KMGT".indexOf(s.charAt(s.length() - 1));
+            if (idx >= 0) {
+                unit = idx + 1;
+                s = s.substring(0, s.length() - 1);
+            }
+        }
+
+        double v = Double.parseDouble(s.trim());
+        if (v < 0) throw new NumberFormatException("Negative size: " + text);
+        return (long) (v * Math.pow(1024, unit));
+    }
 }
@@ -0,0 +1,228 @@
+package com.mogrul.videocompressor.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Keeps staged inputs under a byte budget and away from a full disk.
+ * Inputs of running jobs are pinned; inputs left behind by failed or earlier runs stay on disk
+ * (so the next download can resume) until space is needed, then get evicted least recently used first.
+ * A partial download's {@code .parts} sidecar belongs to its input: it is counted and deleted with it, never
+ * on its own, since an input without its sidecar would pass for a complete one.
+ */
+public final class StageBudget {
+    private static final Logger logger = LoggerFactory.getLogger(StageBudget.class);
+
+    // Headroom left on the stage disk for transcode outputs, logs and the database
+    private static final long MIN_FREE_BYTES = 2L * 1024 * 1024 * 1024;
+    private static final String SIDECAR_SUFFIX = ".parts";
+
+    private final Path stageRoot;
+    private final long budgetBytes;
+
+    // access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes = 0L;
+    // A lock rather than synchronized: reserve() can wait a long time, and a virtual thread waiting inside a
+    // monitor keeps its carrier thread
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition spaceFreed = lock.newCondition();
+
+    /** @param budgetBytes the most staged input bytes kept on disk, or 0 to only guard free space */
+    public StageBudget(Path stageRoot, long budgetBytes) throws IOException {
+        this.stageRoot = stageRoot.toAbsolutePath();
+        this.budgetBytes = budgetBytes;
+        Files.createDirectories(this.stageRoot);
+    }
+
+    /**
+     * Registers inputs left in the stage directory by earlier runs as evictable, oldest first. Those in
+     * {@code pinned} (kept for jobs about to resume) are registered pinned instead, until their job reserves or
+     * abandons them.
+     */
+    public void registerExisting(Path stagedInputRoot, Collection<Path> pinned) throws IOException {
+        lock.lock();
+        try {
+            if (!Files.isDirectory(stagedInputRoot)) return;
+
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(stagedInputRoot)) {
+                files = walk.filter(Files::isRegularFile).toList();
+            }
+
+            List<Path> leftovers = new ArrayList<>();
+            for (Path p : files) {
+                if (!isSidecar(p)) {
+                    leftovers.add(p);
+                } else if (!Files.exists(dataFileOf(p))) {
+                    // Progress of a download whose input is gone is worth nothing
+                    delete(p);
+                }
+            }
+            leftovers.sort(Comparator.comparingLong(StageBudget::lastModified));
+
+            Set<Path> keep = new HashSet<>();
+            for (Path p : pinned) keep.add(p.toAbsolutePath());
+            for (Path p : leftovers) {
+                long size = Files.size(p) + sizeOnDisk(SegmentedCopier.sidecarOf(p));
+                Path key = p.toAbsolutePath();
+                entries.put(key, new Entry(size, keep.contains(key)));
+                usedBytes += size;
+            }
+
+            if (!leftovers.isEmpty()) {
+                logger.info("[STAGE] Found {} staged input(s) from earlier runs ({})",
+                        leftovers.size(), SizeFormatUtil.humanBytes(usedBytes));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Pins {@code bytes} for a staged input, evicting abandoned inputs or waiting for running jobs
+     * to release space until it fits within the budget and the free space on the stage disk.
+     */
+    public void reserve(Path stagedInput, long bytes) throws IOException, InterruptedException {
+        lock.lock();
+        try {
+            Path key = stagedInput.toAbsolutePath();
+
+            // A leftover from an earlier attempt is reused in place (the download resumes from it)
+            Entry previous = entries.remove(key);
+            if (previous != null) usedBytes -= previous.bytes;
+
+            while (!fits(key, bytes)) {
+                if (evictOne()) continue;
+
+                if (usedBytes == 0) {
+                    logger.warn("[STAGE] {} ({}) does not fit the stage budget, staging anyway",
+                            stagedInput.getFileName(), SizeFormatUtil.humanBytes(bytes));
+                    break;
+                }
+
+                logger.info("[STAGE] Waiting for stage space for {} ({} in use)",
+                        stagedInput.getFileName(), SizeFormatUtil.humanBytes(usedBytes));
+                spaceFreed.await();
+            }
+
+            entries.put(key, new Entry(bytes, true));
+            usedBytes += bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** The job finished with its staged input; deletes it and frees the space. */
+    public void release(Path stagedInput) {
+        lock.lock();
+        try {
+            Entry e = entries.remove(stagedInput.toAbsolutePath());
+            if (e != null) usedBytes -= e.bytes;
+            deleteWithSidecar(stagedInput);
+            spaceFreed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** The job failed; keeps the staged input for a later resume but allows it to be evicted. */
+    public void abandon(Path stagedInput) {
+        lock.lock();
+        try {
+            Path key = stagedInput.toAbsolutePath();
+            Entry e = entries.get(key);
+            if (e != null) entries.put(key, new Entry(e.bytes, false));
+            spaceFreed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean fits(Path key, long bytes) throws IOException {
+        if (budgetBytes > 0 && usedBytes + bytes > budgetBytes) return false;
+
+        // Reserved downloads may not have been written yet, so count what they still need
+        long pending = 0L;
+        for (Map.Entry<Path, Entry> e : entries.entrySet()) {
+            if (e.getValue().pinned) pending += Math.max(0L, e.getValue().bytes - sizeOnDisk(e.getKey()));
+        }
+
+        long needed = Math.max(0L, bytes - sizeOnDisk(key));
+        FileStore store = Files.getFileStore(stageRoot);
+        return store.getUsableSpace() - pending - needed >= MIN_FREE_BYTES;
+    }
+
+    private boolean evictOne() {
+        Iterator<Map.Entry<Path, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, Entry> e = it.next();
+            if (e.getValue().pinned) continue;
+
+            it.remove();
+            usedBytes -= e.getValue().bytes;
+            logger.info("[EVICT] {} ({})", e.getKey(), SizeFormatUtil.humanBytes(e.getValue().bytes));
+            deleteWithSidecar(e.getKey());
+            return true;
+        }
+        return false;
+    }
+
+    /** The input goes first, so a crash in between can't leave a partial input without its sidecar. */
+    private static void deleteWithSidecar(Path stagedInput) {
+        delete(stagedInput);
+        delete(SegmentedCopier.sidecarOf(stagedInput));
+    }
+
+    private static boolean isSidecar(Path p) {
+        return p.getFileName().toString().endsWith(SIDECAR_SUFFIX);
+    }
+
+    private static Path dataFileOf(Path sidecar) {
+        String name = sidecar.getFileName().toString();
+        return sidecar.resolveSibling(name.substring(0, name.length() - SIDECAR_SUFFIX.length()));
+    }
+
+    private static void delete(Path p) {
+        try {
+            Files.deleteIfExists(p);
+        } catch (IOException e) {
+            logger.error("[STAGE] Could not delete {}\n{}", p, e.getMessage());
+        }
+    }
+
+    private static long sizeOnDisk(Path p) {
+        try {
+            return Files.exists(p) ? Files.size(p) : 0L;
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    private static long lastModified(Path p) {
+        try {
+            return Files.getLastModifiedTime(p).toMillis();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    private record Entry(long bytes, boolean pinned) {}
+}
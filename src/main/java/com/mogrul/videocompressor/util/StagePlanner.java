@@ -12,6 +12,16 @@ public final class StagePlanner {
         this.outputRoot = outputRoot;
         this.localStageRoot = localStageRoot.toAbsolutePath();    }
 
+    /** Directory holding every staged (downloaded) input. */
+    public Path stagedInputRoot() {
+        return localStageRoot.resolve("in");
+    }
+
+    /** Directory holding every local transcode output, finished or not. */
+    public Path stagedOutputRoot() {
+        return localStageRoot.resolve("out");
+    }
+
     public StagePaths plan(Path remoteInput) {
         Path rel = inputRoot.relativize(remoteInput);
 
@@ -22,10 +32,10 @@ public final class StagePlanner {
         Path remoteTmp = remoteFinal.resolveSibling("tmp_" + remoteFinal.getFileName().toString());
 
         // Local staged input: keep original extension
-        Path localIn = localStageRoot.resolve("in").resolve(rel);
+        Path localIn = stagedInputRoot().resolve(rel);
 
         // Local temp output with container extension (mkv) for ffmpeg
-        Path localOut = localStageRoot.resolve("out").resolve(replaceExt(rel, ".mkv"));
+        Path localOut = stagedOutputRoot().resolve(replaceExt(rel, ".mkv"));
         Path localTmpOut = localOut.resolveSibling("tmp_" + localOut.getFileName().toString()); // tmp_video.mkv
 
         return new StagePaths(remoteFinal, remoteTmp, localIn, localTmpOut, localOut);
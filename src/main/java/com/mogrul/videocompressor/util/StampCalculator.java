@@ -1,56 +1,61 @@
 package com.mogrul.videocompressor.util;
 
+import com.mogrul.videocompressor.enu.StampAlgorithm;
+import com.mogrul.videocompressor.inter.StampStrategy;
 import com.mogrul.videocompressor.record.FileStamp;
 
-import java.io.InputStream;
-import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.security.MessageDigest;
 
 public class StampCalculator {
-    private final int partialBytes;
+    private final StampStrategy strategy;
 
-    public StampCalculator(int partialBytes) {
-        if (partialBytes <= 0) throw new IllegalArgumentException("partialBytes must be > 0");
-        this.partialBytes = partialBytes;
+    public StampCalculator(StampAlgorithm algorithm, int blockBytes) {
+        this(new BlockStampStrategy(algorithm, blockBytes));
+    }
+
+    public StampCalculator(StampStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    public String algorithm() {
+        return strategy.algorithm();
     }
 
     public FileStamp stamp(Path input) throws Exception {
-        BasicFileAttributes a = Files.readAttributes(input, BasicFileAttributes.class);
-        long size = a.size();
-        long mtime = a.lastModifiedTime().toMillis();
+        return stamp(input, metadata(input));
+    }
 
-        String partial = partialSha256(input, partialBytes, size);
-        return new FileStamp(size, mtime, partial);
+    /** Size, mtime and file key from a single stat, without opening the file. */
+    public FileStamp metadata(Path input) throws Exception {
+        BasicFileAttributes a = Files.readAttributes(input, BasicFileAttributes.class);
+        Object key = a.fileKey();
+        return new FileStamp(a.size(), a.lastModifiedTime().toMillis(), key == null ? null : key.toString(), null, null);
     }
 
-    private static String partialSha256(Path file, int bytes, long size) throws Exception {
-        MessageDigest md = MessageDigest.getInstance("SHA-256");
-
-        // include some metadata to reduce collisions across identical headers
-        md.update(file.toString().getBytes(StandardCharsets.UTF_8));
-        md.update(ByteBuffer.allocate(8).putLong(size).array());
-
-        try (InputStream in = Files.newInputStream(file)) {
-            byte[] buf = new byte[8192];
-            int remaining = bytes;
-            while (remaining > 0) {
-                int r = in.read(buf, 0, Math.min(buf.length, remaining));
-                if (r < 0) break;
-                md.update(buf, 0, r);
-                remaining -= r;
-            }
+    /** Adds the content fingerprint to a stamp from {@link #metadata(Path)}. */
+    public FileStamp stamp(Path input, FileStamp metadata) throws Exception {
+        String fingerprint;
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            fingerprint = strategy.fingerprint(input, channel, metadata.size());
         }
-
-        return hex(md.digest());
+        return new FileStamp(metadata.size(), metadata.mtimeMs(), metadata.fileKey(), fingerprint, strategy.algorithm());
     }
 
-    private static String hex(byte[] b) {
-        StringBuilder sb = new StringBuilder(b.length * 2);
-        for (byte x : b) sb.append(String.format("%02x", x));
-        return sb.toString();
+    /**
+     * Whether {@code copy} has the content {@code expected} was stamped from. The fingerprint covers the
+     * original's path, so the copy is hashed as if it were {@code original}.
+     */
+    public boolean isCopyOf(Path copy, Path original, FileStamp expected) throws Exception {
+        if (!expected.hasFingerprint() || !expected.algorithm().equals(strategy.algorithm())) return false;
+
+        long size = Files.size(copy);
+        if (size != expected.size()) return false;
+        try (FileChannel channel = FileChannel.open(copy, StandardOpenOption.READ)) {
+            return strategy.fingerprint(original, channel, size).equals(expected.partialHash());
+        }
     }
 }
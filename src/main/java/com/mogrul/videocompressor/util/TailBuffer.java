@@ -0,0 +1,29 @@
+package com.mogrul.videocompressor.util;
+
+/** Keeps the last {@code capacity} lines of a tool's output in a fixed ring. */
+public final class TailBuffer {
+    private final String[] lines;
+    private int next = 0;
+    private int size = 0;
+
+    public TailBuffer(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be > 0");
+        this.lines = new String[capacity];
+    }
+
+    public void add(String line) {
+        lines[next] = line;
+        next = (next + 1) % lines.length;
+        if (size < lines.length) size++;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        int start = (next - size + lines.length) % lines.length;
+        for (int i = 0; i < size; i++) {
+            sb.append(lines[(start + i) % lines.length]).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -1,35 +1,104 @@
 package com.mogrul.videocompressor.util;
 
+import com.mogrul.videocompressor.metrics.MetricsRegistry;
+
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.function.Predicate;
+
+import static com.mogrul.videocompressor.metrics.MetricsRegistry.*;
 
 public class ToolRunner {
+    private static final int TAIL_LINES = 200;
+    private static final int ERROR_TAIL_LINES = 50;
+
+    private final MetricsRegistry metrics;
+
+    public ToolRunner(MetricsRegistry metrics) {
+        this.metrics = metrics;
+    }
+
     public ToolResult run(List<String> command) throws Exception {
+        return run(command, null);
+    }
+
+    /**
+     * Runs a command, handing every output line to {@code onLine} (if given) as it is printed.
+     * Lines it accepts are treated as consumed and kept out of the tail.
+     */
+    public ToolResult run(List<String> command, Predicate<String> onLine) throws Exception {
         ProcessBuilder pb = new ProcessBuilder(command);
         pb.redirectErrorStream(true);
 
+        long start = System.nanoTime();
         Process p = pb.start();
 
-        StringBuilder tail = new StringBuilder();
-        int linesKept = 0;
+        // keep only the last ~200 lines
+        TailBuffer tail = new TailBuffer(TAIL_LINES);
 
         try (BufferedReader br = new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
             String line;
             while ((line = br.readLine()) != null) {
-                // keep only last ~200 lines
-                if (linesKept++ > 200) {
-                    int cut = tail.indexOf("\n");
-                    if (cut > 0) tail.delete(0, cut + 1);
-                }
-                tail.append(line).append("\n");
+                if (onLine != null && onLine.test(line)) continue;
+                tail.add(line);
             }
         }
 
         int code = p.waitFor();
+        record(command, code, start);
         return new ToolResult(code, tail.toString());
     }
 
-    public record ToolResult(int exitCode, String outputTail) {}
+    /**
+     * Runs a command and keeps its whole stdout, for tools that print structured output. Stderr is kept apart,
+     * as a short tail for error messages.
+     */
+    public ToolResult runForOutput(List<String> command) throws Exception {
+        ProcessBuilder pb = new ProcessBuilder(command);
+
+        long start = System.nanoTime();
+        Process p = pb.start();
+
+        // Drained alongside stdout so a chatty tool can't block on a full stderr pipe
+        TailBuffer errors = new TailBuffer(ERROR_TAIL_LINES);
+        Thread errorReader = Thread.ofVirtual().name("ToolRunner-stderr").start(() -> {
+            try (BufferedReader br = new BufferedReader(new InputStreamReader(p.getErrorStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = br.readLine()) != null) errors.add(line);
+            } catch (IOException ignored) {
+                // The process is gone; whatever was read is enough for a message
+            }
+        });
+
+        String output;
+        try (var in = p.getInputStream()) {
+            output = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        int code = p.waitFor();
+        errorReader.join();
+        record(command, code, start);
+        return new ToolResult(code, output, errors.toString());
+    }
+
+    private void record(List<String> command, int exitCode, long startNanos) {
+        // Label by executable name only, full paths and arguments would explode the series count
+        String tool = Path.of(command.getFirst()).getFileName().toString().replaceFirst("(?i)\\.exe$", "");
+        String labels = label("tool", tool);
+
+        metrics.add(TOOL_RUNS, labels, 1);
+        if (exitCode != 0) metrics.add(TOOL_FAILURES, labels, 1);
+        metrics.observe(TOOL_DURATION, labels, (System.nanoTime() - startNanos) / 1e9);
+    }
+
+    /** {@code errorTail} is only filled by {@link #runForOutput}; {@link #run} merges stderr into the output. */
+    public record ToolResult(int exitCode, String outputTail, String errorTail) {
+        public ToolResult(int exitCode, String outputTail) {
+            this(exitCode, outputTail, "");
+        }
+    }
 }
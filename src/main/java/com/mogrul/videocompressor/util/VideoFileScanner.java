@@ -1,28 +1,185 @@
 package com.mogrul.videocompressor.util;
 
+import com.mogrul.videocompressor.record.ScanDir;
+import com.mogrul.videocompressor.record.ScannedFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitOption;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.util.Locale;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 
+/**
+ * Walks a tree with one fork/join task per directory, so sibling directories on a slow share are listed at
+ * the same time. Each directory is read with a depth-1 walk, which hands back the attributes the listing already
+ * has (free on Windows, one stat per entry elsewhere) instead of asking for them again later.
+ * <p>
+ * Given the directories from the previous scan, a directory whose mtime hasn't moved and whose videos were all
+ * handled last time is not listed again: its known subdirectories are still visited (a change deeper down doesn't
+ * touch the parent's mtime), but it emits nothing. Adding, removing or renaming an entry updates a directory's
+ * mtime; rewriting a file in place does not, which is what a full rescan is for.
+ * <p>
+ * {@code onVideoFile} is called from several scanner threads at once.
+ */
 public final class VideoFileScanner {
-    public void scan(Path root, Consumer<Path> onVideoFile) throws IOException {
-        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
-            @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-                if (isVideo(file)) onVideoFile.accept(file);
-                return FileVisitResult.CONTINUE;
+    private static final Logger logger = LoggerFactory.getLogger(VideoFileScanner.class);
+    private static final String[] EXTENSIONS = {".mp4", ".mkv", ".mov", ".avi", ".webm", ".m4v"};
+
+    private final int parallelism;
+
+    public VideoFileScanner(int parallelism) {
+        if (parallelism <= 0) throw new IllegalArgumentException("parallelism must be > 0");
+        this.parallelism = parallelism;
+    }
+
+    public Collection<ScanDir> scan(Path root, Consumer<ScannedFile> onVideoFile) throws IOException {
+        return scan(root, Map.of(), onVideoFile);
+    }
+
+    /**
+     * @param previous directories from the last completed scan by path, empty for a full scan
+     * @return every directory seen by this scan, to be stored for the next one
+     */
+    public Collection<ScanDir> scan(Path root, Map<String, ScanDir> previous, Consumer<ScannedFile> onVideoFile)
+            throws IOException {
+        Walk walk = new Walk(previous, onVideoFile);
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism, p -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            t.setName("Scanner-" + (t.getPoolIndex() + 1));
+            return t;
+        }, null, false);
+
+        try {
+            long rootMtime = Files.getLastModifiedTime(root).toMillis();
+            pool.invoke(new DirectoryTask(walk, root, rootMtime));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+
+        if (!previous.isEmpty()) {
+            logger.info("[SCAN] Listed {} directories, {} unchanged since the last scan",
+                    walk.listed.sum(), walk.reused.sum());
+        }
+        return walk.seen;
+    }
+
+    /** State shared by every task of one scan. */
+    private static final class Walk {
+        final Map<String, ScanDir> previous;
+        final Map<String, List<String>> previousChildren = new HashMap<>();
+        final Consumer<ScannedFile> onVideoFile;
+        final Collection<ScanDir> seen = new ConcurrentLinkedQueue<>();
+        final LongAdder listed = new LongAdder();
+        final LongAdder reused = new LongAdder();
+
+        Walk(Map<String, ScanDir> previous, Consumer<ScannedFile> onVideoFile) {
+            this.previous = previous;
+            this.onVideoFile = onVideoFile;
+            for (ScanDir d : previous.values()) {
+                if (d.parent() != null) previousChildren.computeIfAbsent(d.parent(), p -> new ArrayList<>()).add(d.path());
+            }
+        }
+    }
+
+    private static final class DirectoryTask extends RecursiveAction {
+        private final Walk walk;
+        private final Path dir;
+        private final long mtimeMs;
+
+        DirectoryTask(Walk walk, Path dir, long mtimeMs) {
+            this.walk = walk;
+            this.dir = dir;
+            this.mtimeMs = mtimeMs;
+        }
+
+        @Override
+        protected void compute() {
+            String key = dir.toString();
+            ScanDir last = walk.previous.get(key);
+
+            try {
+                if (last != null && last.complete() && last.mtimeMs() == mtimeMs) {
+                    walk.reused.increment();
+                    walk.seen.add(last);
+                    invokeAll(knownSubdirs(key));
+                } else {
+                    walk.listed.increment();
+                    invokeAll(list(key));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /** Subdirectories recorded last time, each needing just a stat for its mtime. */
+        private List<DirectoryTask> knownSubdirs(String key) throws IOException {
+            List<DirectoryTask> subdirs = new ArrayList<>();
+            for (String child : walk.previousChildren.getOrDefault(key, List.of())) {
+                Path p = Path.of(child);
+                // Can't have gone missing without changing this directory's mtime, but a race is harmless
+                if (!Files.isDirectory(p)) continue;
+                subdirs.add(new DirectoryTask(walk, p, Files.getLastModifiedTime(p).toMillis()));
             }
-        });
+            return subdirs;
+        }
+
+        private List<DirectoryTask> list(String key) throws IOException {
+            List<DirectoryTask> subdirs = new ArrayList<>();
+            int[] counts = new int[2];
+
+            // At depth 1 subdirectories arrive through visitFile like any other entry
+            Files.walkFileTree(dir, EnumSet.noneOf(FileVisitOption.class), 1, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    counts[0]++;
+                    if (attrs.isDirectory()) {
+                        subdirs.add(new DirectoryTask(walk, file, attrs.lastModifiedTime().toMillis()));
+                    } else if (isVideo(file)) {
+                        counts[1]++;
+                        Object fileKey = attrs.fileKey();
+                        walk.onVideoFile.accept(new ScannedFile(
+                                file,
+                                attrs.size(),
+                                attrs.lastModifiedTime().toMillis(),
+                                fileKey == null ? null : fileKey.toString()
+                        ));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+
+            Path parent = dir.getParent();
+            walk.seen.add(new ScanDir(key, parent == null ? null : parent.toString(), mtimeMs, counts[0], counts[1], true));
+            return subdirs;
+        }
     }
 
-    private static boolean isVideo(Path file) {
-        String n = file.getFileName().toString().toLowerCase(Locale.ROOT);
-        return n.endsWith(".mp4") || n.endsWith(".mkv") || n.endsWith(".mov")
-                || n.endsWith(".avi") || n.endsWith(".webm") || n.endsWith(".m4v");
+    static boolean isVideo(Path file) {
+        // The full path ends with the file name, so checking its tail avoids building a name string
+        String p = file.toString();
+        for (String ext : EXTENSIONS) {
+            if (p.regionMatches(true, p.length() - ext.length(), ext, 0, ext.length())) return true;
+        }
+        return false;
     }
 }
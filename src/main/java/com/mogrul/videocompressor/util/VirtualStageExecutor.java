@@ -0,0 +1,147 @@
+package com.mogrul.videocompressor.util;
+
+import com.mogrul.videocompressor.inter.StageExecutor;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link StageExecutor} that gives every task its own virtual thread and enforces the limits with semaphores.
+ * <p>
+ * Same contract as {@link BoundedExecutor}: {@code workers} tasks run at once and {@code queueCapacity} more may
+ * wait. Waiting tasks are parked virtual threads rather than queue entries, so a stage that mostly blocks (on the
+ * store, on small file reads) can be given thousands of workers without thousands of platform threads.
+ */
+public final class VirtualStageExecutor implements StageExecutor {
+    private final ThreadFactory threads;
+    // Running plus waiting; what makes submit block
+    private final PrioritySemaphore admission;
+    // Running only; waiters are woken in rank order
+    private final PrioritySemaphore running;
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition drained = lock.newCondition();
+    private int outstanding;
+    private boolean shutdown;
+    private volatile int workers;
+
+    public VirtualStageExecutor(String name, int workers, int queueCapacity) {
+        if (workers <= 0) throw new IllegalArgumentException("workers must be > 0");
+        if (queueCapacity <= 0) throw new IllegalArgumentException("queueCapacity must be > 0");
+
+        this.threads = Thread.ofVirtual().name(name + "-", 1).factory();
+        this.admission = new PrioritySemaphore(workers + queueCapacity);
+        this.running = new PrioritySemaphore(workers);
+        this.workers = workers;
+    }
+
+    @Override
+    public void submit(Runnable task, long rank) throws InterruptedException {
+        admission.acquire(0);
+        start(() -> {
+            try {
+                running.acquire(rank);
+            } catch (InterruptedException e) {
+                return;
+            }
+            run(task);
+        });
+    }
+
+    @Override
+    public boolean trySubmit(Runnable task) {
+        if (!admission.tryAcquire()) return false;
+        if (!running.tryAcquire()) {
+            admission.release();
+            return false;
+        }
+        try {
+            start(() -> run(task));
+        } catch (RejectedExecutionException e) {
+            running.release();
+            throw e;
+        }
+        return true;
+    }
+
+    private void run(Runnable task) {
+        active.incrementAndGet();
+        try {
+            task.run();
+        } finally {
+            active.decrementAndGet();
+            running.release();
+        }
+    }
+
+    private void start(Runnable body) {
+        lock.lock();
+        try {
+            if (shutdown) {
+                admission.release();
+                throw new RejectedExecutionException("Stage is shut down");
+            }
+            outstanding++;
+        } finally {
+            lock.unlock();
+        }
+
+        threads.newThread(() -> {
+            try {
+                body.run();
+            } finally {
+                admission.release();
+                lock.lock();
+                try {
+                    if (--outstanding == 0) drained.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }).start();
+    }
+
+    @Override
+    public int idle() {
+        return Math.max(0, workers - active.get() - running.waiting());
+    }
+
+    @Override
+    public int workers() {
+        return workers;
+    }
+
+    @Override
+    public int queued() {
+        return running.waiting();
+    }
+
+    @Override
+    public int active() {
+        return active.get();
+    }
+
+    @Override
+    public synchronized void resize(int workers) {
+        if (workers <= 0) throw new IllegalArgumentException("workers must be > 0");
+        int delta = workers - this.workers;
+        this.workers = workers;
+        running.adjust(delta);
+        admission.adjust(delta);
+    }
+
+    @Override
+    public void shutdownAndAwait() throws InterruptedException {
+        lock.lock();
+        try {
+            shutdown = true;
+            while (outstanding > 0) drained.await();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.mogrul.videocompressor.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/** Streaming XXH64 (seed 0 unless given), fed from heap or direct buffers. Not thread safe. */
+public final class XxHash64 {
+    private static final long P1 = 0x9E3779B185EBCA87L;
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long P3 = 0x165667B19E3779F9L;
+    private static final long P4 = 0x85EBCA77C2B2AE63L;
+    private static final long P5 = 0x27D4EB2F165667C5L;
+
+    private final long seed;
+    private final ByteBuffer pending = ByteBuffer.allocate(32).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer scratch = ByteBuffer.allocate(Long.BYTES);
+    private long v1, v2, v3, v4;
+    private long total;
+
+    public XxHash64() {
+        this(0);
+    }
+
+    public XxHash64(long seed) {
+        this.seed = seed;
+        reset();
+    }
+
+    public void reset() {
+        v1 = seed + P1 + P2;
+        v2 = seed + P2;
+        v3 = seed;
+        v4 = seed - P1;
+        total = 0;
+        pending.clear();
+    }
+
+    /** Feeds the eight big-endian bytes of {@code value}. */
+    public void update(long value) {
+        scratch.clear();
+        update(scratch.putLong(value).flip());
+    }
+
+    public void update(byte[] bytes) {
+        update(ByteBuffer.wrap(bytes));
+    }
+
+    /** Consumes every remaining byte of {@code buf}. */
+    public void update(ByteBuffer buf) {
+        ByteOrder order = buf.order();
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            total += buf.remaining();
+
+            // Top up a partially filled stripe first
+            if (pending.position() > 0) {
+                while (pending.hasRemaining() && buf.hasRemaining()) pending.put(buf.get());
+                if (pending.hasRemaining()) return;
+                pending.flip();
+                stripe(pending);
+                pending.clear();
+            }
+
+            while (buf.remaining() >= 32) stripe(buf);
+            pending.put(buf);
+        } finally {
+            buf.order(order);
+        }
+    }
+
+    private void stripe(ByteBuffer b) {
+        v1 = round(v1, b.getLong());
+        v2 = round(v2, b.getLong());
+        v3 = round(v3, b.getLong());
+        v4 = round(v4, b.getLong());
+    }
+
+    public long digest() {
+        long h;
+        if (total >= 32) {
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = merge(h, v1);
+            h = merge(h, v2);
+            h = merge(h, v3);
+            h = merge(h, v4);
+        } else {
+            h = seed + P5;
+        }
+        h += total;
+
+        ByteBuffer tail = pending.duplicate().order(ByteOrder.LITTLE_ENDIAN).flip();
+        while (tail.remaining() >= 8) {
+            h ^= round(0, tail.getLong());
+            h = Long.rotateLeft(h, 27) * P1 + P4;
+        }
+        if (tail.remaining() >= 4) {
+            h ^= (tail.getInt() & 0xFFFFFFFFL) * P1;
+            h = Long.rotateLeft(h, 23) * P2 + P3;
+        }
+        while (tail.hasRemaining()) {
+            h ^= (tail.get() & 0xFFL) * P5;
+            h = Long.rotateLeft(h, 11) * P1;
+        }
+
+        h ^= h >>> 33;
+        h *= P2;
+        h ^= h >>> 29;
+        h *= P3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * P2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * P1;
+    }
+
+    private static long merge(long acc, long value) {
+        acc ^= round(0, value);
+        return acc * P1 + P4;
+    }
+}